@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * A snapshot of the counters of one of the caches an 
+ * {@link Interpolator} can be configured with.
+ * 
+ * @author Luis Antunes
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    
+    public CacheStats(long hits, long misses, long evictions, int size) {
+        
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long hits() {
+        return hits;
+    }
+    
+    public long misses() {
+        return misses;
+    }
+    
+    public long evictions() {
+        return evictions;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public String toString() {
+        return "CacheStats[hits=" + hits + ", misses=" + misses + 
+                ", evictions=" + evictions + ", size=" + size + "]";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.io.IOException;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A template that has already been scanned by an {@link Interpolator}. 
+ * Interpolating a compiled template goes straight to substitution.
+ * 
+ * @author Luis Antunes
+ */
+public interface CompiledTemplate<T> {
+
+    String template();
+    
+    String interpolate(T arg);
+    
+    /**
+     * Appends the result of the interpolation to the given StringBuilder,
+     * so that a single buffer can be reused across many interpolations.
+     */
+    void interpolate(T arg, StringBuilder out);
+    
+    /**
+     * Writes the result of the interpolation to the given Appendable, such
+     * as a Writer. Values of WritingSubstitutors are written in place.
+     */
+    void interpolate(T arg, Appendable out) throws IOException;
+    
+    /**
+     * Writes the result of the interpolation to the channel, in UTF-8, with
+     * a single gathering write. The literal text of the template is only 
+     * encoded once; afterwards, only the values are encoded.
+     */
+    void interpolate(T arg, GatheringByteChannel channel) throws IOException;
+    
+    /**
+     * Returns the captured values of the placeholders an interpolation 
+     * would substitute, by handler, in the order they appear. Escaped and 
+     * overlapped placeholders are resolved as if every placeholder had a 
+     * value, and the placeholders of fallbacks are included. No Substitutor
+     * is called.
+     */
+    Map<SubstitutionHandler<T>, Set<String>> placeholders();
+}
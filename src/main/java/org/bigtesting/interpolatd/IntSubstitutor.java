@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * A Substitutor whose value is an int. The value is appended to the
+ * output as is, without being boxed or turned into a String first.
+ * 
+ * @author Luis Antunes
+ */
+public interface IntSubstitutor<T> {
+
+    int substitute(String captured, T arg);
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bigtesting.interpolatd.core.BoundedExecutor;
+import org.bigtesting.interpolatd.core.CompiledTemplateImpl;
+
+/**
+ * A stream processing stage that interpolates the elements offered to it
+ * and hands the results to a subscriber, as the subscriber requests them.
+ * <p>
+ * At most bufferSize elements are held by the stage; offer() blocks while
+ * the buffer is full, which pushes back on the producer. Elements are 
+ * interpolated in batches, whenever there is both demand and input, with 
+ * a single reused buffer, and consecutive elements with the same template
+ * share its compiled form. Given an Executor, elements are instead 
+ * interpolated concurrently as soon as they are offered, with at most 
+ * maxInFlight running at once, and are still delivered in order.
+ * <p>
+ * A failed interpolation ends the stage with onError; a subscriber that
+ * throws from onNext cancels it, and the exception propagates to the 
+ * caller that triggered the delivery.
+ *
+ * @author Luis Antunes
+ */
+public class InterpolationStage<T> {
+
+    private final Interpolator<T> interpolator;
+
+    private final InterpolationSubscriber<T> subscriber;
+
+    private final BoundedExecutor executor;
+
+    private final int bufferSize;
+
+    private final Semaphore space;
+
+    private final Queue<Element<T>> queue = new ConcurrentLinkedQueue<Element<T>>();
+
+    private final AtomicLong demand = new AtomicLong();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private final AtomicBoolean terminated = new AtomicBoolean();
+
+    private volatile boolean completed;
+
+    private volatile boolean cancelled;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    public InterpolationStage(Interpolator<T> interpolator, 
+            InterpolationSubscriber<T> subscriber, int bufferSize) {
+
+        this(interpolator, subscriber, bufferSize, null, 0);
+    }
+
+    public InterpolationStage(Interpolator<T> interpolator, InterpolationSubscriber<T> subscriber, 
+            int bufferSize, Executor executor, int maxInFlight) {
+
+        if (interpolator == null) {
+            throw new IllegalArgumentException("interpolator cannot be null");
+        }
+        if (subscriber == null) {
+            throw new IllegalArgumentException("subscriber cannot be null");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.interpolator = interpolator;
+        this.subscriber = subscriber;
+        this.bufferSize = bufferSize;
+        this.space = new Semaphore(bufferSize);
+        this.executor = executor != null ? new BoundedExecutor(executor, maxInFlight) : null;
+    }
+
+    /**
+     * Offers an element to the stage, blocking while the buffer is full.
+     * 
+     * @throws IllegalStateException if the stage was completed or cancelled,
+     *         or has failed
+     */
+    public void offer(String template, T arg) throws InterruptedException {
+
+        if (template == null) {
+            throw new IllegalArgumentException("template cannot be null");
+        }
+        space.acquire();
+        if (completed || cancelled || terminated.get()) {
+            space.release();
+            throw new IllegalStateException("stage no longer accepts elements");
+        }
+
+        final Element<T> element = new Element<T>(template, arg);
+        if (executor != null) {
+            try {
+                executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        try {
+                            element.result = interpolator.interpolate(element.template, element.arg);
+                        } catch (Throwable t) {
+                            element.error = t;
+                        }
+                        element.done = true;
+                        drain();
+                        return null;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                space.release();
+                throw e;
+            }
+        }
+        queue.offer(element);
+        drain();
+    }
+
+    /**
+     * Requests n more results. The results are delivered on the thread 
+     * calling this method, or the one offering or interpolating elements.
+     */
+    public void request(long n) {
+
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        while (true) {
+            long current = demand.get();
+            long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            if (demand.compareAndSet(current, next)) break;
+        }
+        drain();
+    }
+
+    /**
+     * Signals that no more elements will be offered. The subscriber is
+     * completed once every offered element is delivered.
+     */
+    public void complete() {
+
+        completed = true;
+        drain();
+    }
+
+    /**
+     * Stops the stage; buffered elements are dropped and the subscriber is
+     * not signalled again.
+     */
+    public void cancel() {
+
+        cancelled = true;
+        drain();
+    }
+
+    private void drain() {
+
+        if (wip.getAndIncrement() != 0) return;
+
+        boolean released = false;
+        try {
+            emit();
+            released = true;
+        } finally {
+            if (!released) {
+                /*
+                 * the subscriber threw from onNext or onComplete: the stage is
+                 * cancelled, as a subscriber that throws can't be signalled
+                 * again, and wip is released so later calls don't stall
+                 */
+                terminated.set(true);
+                terminate();
+                wip.set(0);
+            }
+        }
+    }
+
+    private void emit() {
+
+        int missed = 1;
+        CompiledTemplateImpl<T> compiled = null;
+        do {
+            while (true) {
+
+                if (cancelled && terminated.compareAndSet(false, true)) {
+                    terminate();
+                }
+                if (terminated.get()) {
+                    queue.clear();
+                    break;
+                }
+
+                boolean done = completed;
+                Element<T> element = queue.peek();
+                if (element == null) {
+                    if (done && terminated.compareAndSet(false, true)) {
+                        subscriber.onComplete();
+                    }
+                    break;
+                }
+                if (demand.get() == 0) break;
+
+                CharSequence result;
+                if (executor != null) {
+                    if (!element.done) break;
+                    if (element.error != null) {
+                        fail(element.error);
+                        break;
+                    }
+                    result = element.result;
+                } else {
+                    try {
+                        if (compiled == null || !compiled.template().equals(element.template)) {
+                            compiled = interpolator.compiled(element.template);
+                        }
+                        buffer.setLength(0);
+                        compiled.interpolate(element.arg, buffer);
+                    } catch (Throwable t) {
+                        fail(t);
+                        break;
+                    }
+                    result = buffer;
+                }
+
+                queue.poll();
+                space.release();
+                if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                subscriber.onNext(element.arg, result);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void fail(Throwable error) {
+
+        if (terminated.compareAndSet(false, true)) {
+            terminate();
+            subscriber.onError(error);
+        }
+    }
+
+    private void terminate() {
+
+        queue.clear();
+        /* wake up producers blocked on a full buffer, so they see the stage has ended */
+        space.release(bufferSize);
+    }
+
+    private static class Element<T> {
+
+        private final String template;
+        private final T arg;
+
+        private volatile String result;
+        private volatile Throwable error;
+        private volatile boolean done;
+
+        Element(String template, T arg) {
+            this.template = template;
+            this.arg = arg;
+        }
+    }
+}
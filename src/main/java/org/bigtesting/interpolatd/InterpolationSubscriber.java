@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * Receives the results of an InterpolationStage, in the order in which 
+ * the elements were offered, and never more than requested.
+ *
+ * @author Luis Antunes
+ */
+public interface InterpolationSubscriber<T> {
+
+    /**
+     * The result may be a buffer that is reused once this method returns;
+     * call toString() on it to keep it.
+     */
+    void onNext(T arg, CharSequence result);
+
+    void onError(Throwable error);
+
+    void onComplete();
+}
@@ -15,14 +15,32 @@
  */
 package org.bigtesting.interpolatd;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import org.bigtesting.interpolatd.core.CompiledTemplateImpl;
+import org.bigtesting.interpolatd.core.EnclosureClosingHandlerImpl;
 import org.bigtesting.interpolatd.core.EscapeHandler;
+import org.bigtesting.interpolatd.core.Expansion;
+import org.bigtesting.interpolatd.core.Fragments;
 import org.bigtesting.interpolatd.core.Interpolating;
 import org.bigtesting.interpolatd.core.InterpolationHandlerImpl;
-import org.bigtesting.interpolatd.core.Substitution;
+import org.bigtesting.interpolatd.core.LiveTemplateImpl;
+import org.bigtesting.interpolatd.core.LruCache;
+import org.bigtesting.interpolatd.core.Match;
+import org.bigtesting.interpolatd.core.ParallelBatch;
+import org.bigtesting.interpolatd.core.ParallelScan;
+import org.bigtesting.interpolatd.core.ResultCache;
+import org.bigtesting.interpolatd.core.SectionHandlerImpl;
+import org.bigtesting.interpolatd.core.TemplateCompiler;
+import org.bigtesting.interpolatd.core.TemplateRegistryImpl;
 
 /**
  * 
@@ -32,10 +50,27 @@
     
     private final List<Interpolating<T>> interpolating = new ArrayList<Interpolating<T>>();
     
+    private volatile LruCache<String, CompiledTemplateImpl<T>> templateCache;
+    
+    private volatile ResultCache<T> resultCache;
+    
+    private String fallbackSeparator;
+    
+    private Expansion<T> expansion;
+    
+    private final TemplateCompiler<T> compiler = new TemplateCompiler<T>() {
+        public CompiledTemplateImpl<T> compile(String template) {
+            return compiled(template);
+        }
+    };
+    
+    private final Fragments<T> fragments = new Fragments<T>(compiler);
+    
     public InterpolationHandler<T> when() {
         
         InterpolationHandlerImpl<T> handler = new InterpolationHandlerImpl<T>();
         interpolating.add(handler);
+        configurationChanged();
         return handler;
     }
     
@@ -43,83 +78,443 @@ public InterpolationHandler<T> when(String characterClass) {
         
         InterpolationHandlerImpl<T> handler = new InterpolationHandlerImpl<T>(characterClass);
         interpolating.add(handler);
+        configurationChanged();
         return handler;
     }
 
     public void escapeWith(String escape) {
         
         interpolating.add(new EscapeHandler<T>(escape));
+        configurationChanged();
+    }
+    
+    /**
+     * Enables sections, which are repeated for each of the rows the given
+     * provider returns for their name. With "{{#", "{{/" and "}}", the 
+     * section {{#lines}}...{{/lines}} renders its body once for each of 
+     * the rows returned for "lines", with the row as the argument. The 
+     * body is compiled once, when the section is first rendered, and every
+     * row is rendered straight into the output.
+     */
+    public void sectionsWith(String opening, String ending, String closing, 
+            SectionProvider<T> provider) {
+        
+        interpolating.add(new SectionHandlerImpl<T>(opening, ending, closing, provider, compiler));
+        configurationChanged();
+    }
+    
+    /**
+     * Enables fallback values in enclosures: in #{name:-fallback}, with a
+     * separator of ":-", the Substitutor is given "name", and when it has
+     * no value for it, the fallback is used instead. The fallback is itself
+     * a template, interpolated by all handlers, so it can hold placeholders
+     * of its own. It is scanned once, when the enclosing template is.
+     */
+    public void fallbackWith(String separator) {
+        
+        if (separator == null || separator.length() == 0) {
+            throw new IllegalArgumentException("separator cannot be null or empty");
+        }
+        this.fallbackSeparator = separator;
+        configurationChanged();
+    }
+    
+    /**
+     * Interpolates substituted values as well, through the same handlers,
+     * so that values can refer to other values. Each distinct placeholder 
+     * is expanded only once per interpolation. An IllegalStateException is
+     * thrown when a value refers back to itself, or when values refer to 
+     * each other more than maxDepth levels deep.
+     */
+    public void expandRecursively(int maxDepth) {
+        
+        this.expansion = new Expansion<T>(compiler, maxDepth);
+        configurationChanged();
+    }
+    
+    /**
+     * Registers a named fragment, which templates can include through the
+     * Substitutor returned by includes(). The fragment is compiled once 
+     * and shared by all the templates that include it.
+     */
+    public void fragment(String name, String template) {
+        
+        fragments.register(name, template, false);
+        invalidateResults();
+    }
+    
+    /**
+     * Registers a named fragment. A constant fragment is one whose result
+     * doesn't depend on the argument; it is rendered only once, and its
+     * result is included as is from then on.
+     */
+    public void fragment(String name, String template, boolean constant) {
+        
+        fragments.register(name, template, constant);
+        invalidateResults();
+    }
+    
+    public void removeFragment(String name) {
+        
+        fragments.unregister(name);
+        invalidateResults();
+    }
+    
+    /**
+     * Returns a Substitutor that includes the fragment registered under
+     * the captured name, leaving the match as it is if there is none.
+     * An IllegalStateException is thrown when a fragment includes itself,
+     * directly or through other fragments:
+     * <pre>
+     * interpolator.when().enclosedBy("{{&gt;").and("}}").handleWith(interpolator.includes());
+     * </pre>
+     */
+    public WritingSubstitutor<T> includes() {
+        
+        return fragments;
+    }
+    
+    /**
+     * Caches compiled templates, keyed by the template string, so that
+     * interpolating a template seen before skips scanning altogether. 
+     * The least recently used templates are evicted once the cache holds
+     * more than maxTemplates templates, or more than maxChars characters
+     * of template text in total.
+     */
+    public void cacheTemplates(int maxTemplates, long maxChars) {
+        
+        templateCache = new LruCache<String, CompiledTemplateImpl<T>>(maxTemplates, maxChars);
+    }
+    
+    public CacheStats templateCacheStats() {
+        
+        LruCache<String, CompiledTemplateImpl<T>> cache = templateCache;
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0);
+    }
+    
+    /**
+     * Caches interpolation results, keyed by the template string and by
+     * the key the given KeyExtractor derives from the argument, so that
+     * repeating an interpolation neither scans the template nor calls any
+     * Substitutor. Only use this when the Substitutors are deterministic 
+     * for a given argument key. Results are evicted once more than 
+     * maxResults are cached, or once they are older than the given ttl;
+     * a ttl of 0 means results never expire.
+     */
+    public void cacheResults(KeyExtractor<T> keyExtractor, int maxResults, 
+            long ttl, TimeUnit unit) {
+        
+        resultCache = new ResultCache<T>(keyExtractor, maxResults, unit.toNanos(ttl));
+    }
+    
+    public void invalidateResults() {
+        
+        ResultCache<T> cache = resultCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+    
+    public void invalidateResults(Object argKey) {
+        
+        ResultCache<T> cache = resultCache;
+        if (cache != null) {
+            cache.invalidate(argKey);
+        }
+    }
+    
+    public void invalidateResult(String template, Object argKey) {
+        
+        ResultCache<T> cache = resultCache;
+        if (cache != null) {
+            cache.invalidate(template, argKey);
+        }
+    }
+    
+    public CacheStats resultCacheStats() {
+        
+        ResultCache<T> cache = resultCache;
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0);
+    }
+    
+    public CompiledTemplate<T> compile(String toInterpolate) {
+        
+        return compileTemplate(toInterpolate);
+    }
+    
+    /**
+     * Compiles a large template by splitting it into chunks that are 
+     * scanned in parallel on the given Executor. The compiled template 
+     * is identical to the one compile(String) would have produced.
+     */
+    public CompiledTemplate<T> compile(String toInterpolate, Executor executor) {
+        
+        return new CompiledTemplateImpl<T>(toInterpolate, 
+                withFallbacks(new ParallelScan<T>(interpolating, executor).scan(toInterpolate)),
+                expansion);
+    }
+    
+    /**
+     * Returns the captured values of the placeholders that interpolating the
+     * given string would substitute, by handler, so that their values can be
+     * fetched beforehand. The string is scanned, or found in the template 
+     * cache, but no Substitutor is called.
+     */
+    public Map<SubstitutionHandler<T>, Set<String>> placeholders(String toInterpolate) {
+        
+        return compiled(toInterpolate).placeholders();
     }
     
     public String interpolate(String toInterpolate, T arg) {
         
-        List<Substitution> substitutions = new ArrayList<Substitution>();
-        for (Interpolating<T> handler : interpolating) {
-            
-            substitutions.addAll(handler.interpolate(toInterpolate, arg));
+        ResultCache<T> cache = resultCache;
+        if (cache == null) {
+            return compiled(toInterpolate).interpolate(arg);
         }
         
-        Collections.sort(substitutions);
+        Object argKey = cache.keyFor(arg);
+        if (argKey == null) {
+            return compiled(toInterpolate).interpolate(arg);
+        }
         
-        StringBuilder sb = new StringBuilder(toInterpolate);
-        int diff = 0;
-        int lastEnd = 0;
-        Substitution lastEscape = null;
-        for (int i = 0; i < substitutions.size(); i++) {
-            
-            Substitution sub = substitutions.get(i);
-            
-            if (sub.start() < lastEnd) continue;
-            
-            if (sub.isEscape()) {
-                
-                if (lastEscape != null && sub.isAfter(lastEscape)) {
-                    continue;
-                }
-                    
-                if (isActualEscape(sub, substitutions, i)) {
-                    lastEscape = sub;
-                } else {
-                    continue;
-                }
-                
-            } else if (lastEscape != null && sub.isAfter(lastEscape)) {
-                
-                lastEnd = sub.end();
-                continue;
+        long generation = cache.generation();
+        String result = cache.get(toInterpolate, argKey);
+        if (result == null) {
+            result = compiled(toInterpolate).interpolate(arg);
+            cache.put(toInterpolate, argKey, result, generation);
+        }
+        return result;
+    }
+    
+    /**
+     * Interpolates any CharSequence, such as a StringBuilder or a CharBuffer,
+     * scanning it in place instead of copying it to a String first. A String
+     * is interpolated as by interpolate(String, T). Anything else may change,
+     * so it is never cached, nor looked up in the caches.
+     */
+    public String interpolate(CharSequence toInterpolate, T arg) {
+        
+        if (toInterpolate instanceof String) {
+            return interpolate((String)toInterpolate, arg);
+        }
+        return compileTemplate(toInterpolate).interpolate(arg);
+    }
+    
+    /**
+     * Interpolates length characters of the given array, starting at offset,
+     * scanning them in place.
+     */
+    public String interpolate(char[] toInterpolate, int offset, int length, T arg) {
+        
+        return interpolate(CharBuffer.wrap(toInterpolate, offset, length), arg);
+    }
+    
+    /**
+     * Writes the result of the interpolation to the given Appendable, such
+     * as a Writer, without building it as a String first. Values of 
+     * WritingSubstitutors are written in place.
+     */
+    public void interpolate(String toInterpolate, T arg, Appendable out) throws IOException {
+        
+        compiled(toInterpolate).interpolate(arg, out);
+    }
+    
+    /**
+     * Writes the result of the interpolation of any CharSequence to the given
+     * Appendable, scanning the CharSequence in place.
+     */
+    public void interpolate(CharSequence toInterpolate, T arg, Appendable out) throws IOException {
+        
+        if (toInterpolate instanceof String) {
+            interpolate((String)toInterpolate, arg, out);
+            return;
+        }
+        compileTemplate(toInterpolate).interpolate(arg, out);
+    }
+    
+    /**
+     * Writes the result of the interpolation to the channel, in UTF-8, with
+     * a single gathering write. Together with cacheTemplates(), the literal
+     * text of a template is encoded only once.
+     */
+    public void interpolate(String toInterpolate, T arg, GatheringByteChannel channel) throws IOException {
+        
+        compiled(toInterpolate).interpolate(arg, channel);
+    }
+    
+    /**
+     * Returns the interpolation of the given string as a Rope, which refers
+     * to slices of the template and to the substituted values instead of
+     * copying them, and can be written out without ever being flattened.
+     */
+    public Rope rope(String toInterpolate, T arg) {
+        
+        RopeBuilder rope = new RopeBuilder();
+        try {
+            compiled(toInterpolate).interpolate(arg, rope);
+        } catch (IOException e) {
+            /* only a WritingSubstitutor can fail, since a RopeBuilder doesn't */
+            throw new RuntimeException(e);
+        }
+        return rope.build();
+    }
+    
+    /**
+     * Returns the interpolation of the given string, as a CharSequence that
+     * only does the interpolation when it is first used. Until then, the 
+     * template is not scanned, and no Substitutor is called.
+     */
+    public LazyInterpolation<T> lazy(String toInterpolate, T arg) {
+        
+        return new LazyInterpolation<T>(this, toInterpolate, arg);
+    }
+    
+    /**
+     * Returns the interpolation of the given template as a LiveTemplate, 
+     * which can be edited. After an edit, only the region around it is 
+     * scanned again, and only the placeholders found there are substituted.
+     * Handlers added to this Interpolator afterwards don't apply to it.
+     */
+    public LiveTemplate<T> live(String template, T arg) {
+        
+        LiveTemplateImpl<T> live = new LiveTemplateImpl<T>(interpolating, arg, expansion) {
+            @Override
+            protected List<Match<T>> found(List<Match<T>> matches) {
+                return withFallbacks(matches);
             }
+        };
+        live.edit(0, 0, template);
+        return live;
+    }
+    
+    /**
+     * Returns a new registry of templates rendered by this Interpolator, 
+     * which renders them again only when keys they use change.
+     */
+    public TemplateRegistry<T> registry() {
+        
+        return new TemplateRegistryImpl<T>(compiler);
+    }
+    
+    /**
+     * Interpolates a large input, scanning it in parallel chunks on the given
+     * Executor. The result is identical to that of interpolate(String, T).
+     */
+    public String interpolate(String toInterpolate, T arg, Executor executor) {
+        
+        return compile(toInterpolate, executor).interpolate(arg);
+    }
+    
+    /**
+     * Interpolates the same template once for each of the given arguments.
+     * The template is scanned only once.
+     */
+    public List<String> interpolateAll(String toInterpolate, Iterable<T> args) {
+        
+        final List<String> results = new ArrayList<String>();
+        interpolateAll(toInterpolate, args, new ResultConsumer<T>() {
+            public void accept(T arg, CharSequence result) {
+                results.add(result.toString());
+            }
+        });
+        return results;
+    }
+    
+    /**
+     * Interpolates the same template once for each of the given arguments,
+     * handing each result to the consumer as it is produced. The template 
+     * is scanned only once, and a single buffer is reused for all results.
+     */
+    public void interpolateAll(String toInterpolate, Iterable<T> args, ResultConsumer<T> consumer) {
+        
+        CompiledTemplateImpl<T> compiled = compiled(toInterpolate);
+        StringBuilder sb = new StringBuilder(toInterpolate.length());
+        for (T arg : args) {
             
-            if (sub.value() == null) continue;
-            
-            sb.replace(sub.start() - diff, sub.end() - diff, sub.value());
-            diff += sub.found().length() - sub.value().length();
-            lastEnd = sub.end();
+            sb.setLength(0);
+            compiled.interpolate(arg, sb);
+            consumer.accept(arg, sb);
         }
-        return sb.toString();
     }
     
-    private boolean isActualEscape(Substitution esc, List<Substitution> substitutions, int index) {
+    /**
+     * Interpolates the same template once for each of the given arguments,
+     * splitting the arguments into chunks that are interpolated in parallel
+     * on the given Executor (a ForkJoinPool, for instance). The results are
+     * returned in argument order.
+     */
+    public List<String> interpolateAll(String toInterpolate, List<T> args, Executor executor) {
         
-        if (!hasNext(substitutions, index)) return false;
+        return new ParallelBatch<T>(compiled(toInterpolate), args, executor).interpolate();
+    }
+    
+    /**
+     * Interpolates the same template once for each of the given arguments,
+     * in parallel on the given Executor, handing each result to the consumer.
+     * When ordered, the consumer is called on the calling thread, in argument
+     * order. Otherwise, it is called from the worker threads as soon as each
+     * result is produced, and must be thread-safe.
+     */
+    public void interpolateAll(String toInterpolate, List<T> args, Executor executor, 
+            boolean ordered, ResultConsumer<T> consumer) {
+        
+        new ParallelBatch<T>(compiled(toInterpolate), args, executor).run(ordered, consumer);
+    }
+    
+    private CompiledTemplateImpl<T> compileTemplate(CharSequence toInterpolate) {
         
-        Substitution nextSub = getNext(substitutions, index);
+        List<Match<T>> matches = new ArrayList<Match<T>>();
+        for (Interpolating<T> handler : interpolating) {
+            
+            matches.addAll(handler.match(toInterpolate, 0, toInterpolate.length()));
+        }
         
-        if (!nextSub.isAfter(esc)) return false;
+        return new CompiledTemplateImpl<T>(toInterpolate, withFallbacks(matches), expansion);
+    }
+    
+    private List<Match<T>> withFallbacks(List<Match<T>> matches) {
         
-        if (!nextSub.isEscape()) return true;
+        String separator = fallbackSeparator;
+        if (separator == null) return matches;
         
-        /*
-         * nextSub is an escape immediately after the current escape;
-         * look ahead to see if a non-escape substitution occurs
-         */
-        return isActualEscape(nextSub, substitutions, ++index);
+        List<Match<T>> withFallbacks = new ArrayList<Match<T>>(matches.size());
+        for (Match<T> match : matches) {
+            
+            int at = match.handler() instanceof EnclosureClosingHandlerImpl ? 
+                    match.captured().indexOf(separator) : -1;
+            if (at < 0) {
+                withFallbacks.add(match);
+                continue;
+            }
+            String fallback = match.captured().substring(at + separator.length());
+            withFallbacks.add(match.withFallback(match.captured().substring(0, at), 
+                    compileTemplate(fallback)));
+        }
+        return withFallbacks;
     }
     
-    private boolean hasNext(List<Substitution> substitutions, int currentIndex) {
-        return (currentIndex + 1) < substitutions.size();
+    CompiledTemplateImpl<T> compiled(String toInterpolate) {
+        
+        LruCache<String, CompiledTemplateImpl<T>> cache = templateCache;
+        if (cache == null) {
+            return compileTemplate(toInterpolate);
+        }
+        
+        CompiledTemplateImpl<T> compiled = cache.get(toInterpolate);
+        if (compiled == null) {
+            compiled = compileTemplate(toInterpolate);
+            cache.put(toInterpolate, compiled, toInterpolate.length());
+        }
+        return compiled;
     }
     
-    private Substitution getNext(List<Substitution> substitutions, int currentIndex) {
-        return substitutions.get(currentIndex + 1);
+    private void configurationChanged() {
+        
+        LruCache<String, CompiledTemplateImpl<T>> cache = templateCache;
+        if (cache != null) {
+            cache.clear();
+        }
+        fragments.reset();
+        invalidateResults();
     }
 }
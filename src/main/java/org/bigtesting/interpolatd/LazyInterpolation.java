@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.io.IOException;
+
+/**
+ * An interpolation that is only done when its result is first used, for
+ * instance by a logger that decided to log the message. The result is 
+ * then kept, and the template and argument are let go.
+ * 
+ * @author Luis Antunes
+ */
+public final class LazyInterpolation<T> implements CharSequence {
+
+    private volatile Pending<T> pending;
+    
+    private volatile String result;
+    
+    LazyInterpolation(Interpolator<T> interpolator, String template, T arg) {
+        
+        this.pending = new Pending<T>(interpolator, template, arg);
+    }
+    
+    /**
+     * Returns whether the interpolation has been done.
+     */
+    public boolean isRendered() {
+        
+        return result != null;
+    }
+    
+    public void appendTo(Appendable out) throws IOException {
+        
+        out.append(toString());
+    }
+    
+    public int length() {
+        
+        return toString().length();
+    }
+    
+    public char charAt(int index) {
+        
+        return toString().charAt(index);
+    }
+    
+    public CharSequence subSequence(int start, int end) {
+        
+        return toString().subSequence(start, end);
+    }
+    
+    /*
+     * Threads racing for the first use may each do the interpolation, rather
+     * than have one hold a lock while the Substitutors run.
+     */
+    @Override
+    public String toString() {
+        
+        String result = this.result;
+        if (result != null) return result;
+        
+        Pending<T> pending = this.pending;
+        if (pending == null) return this.result;
+        
+        result = pending.interpolator.interpolate(pending.template, pending.arg);
+        this.result = result;
+        this.pending = null;
+        return result;
+    }
+    
+    private static class Pending<T> {
+        
+        private final Interpolator<T> interpolator;
+        private final String template;
+        private final T arg;
+        
+        Pending(Interpolator<T> interpolator, String template, T arg) {
+            this.interpolator = interpolator;
+            this.template = template;
+            this.arg = arg;
+        }
+    }
+}
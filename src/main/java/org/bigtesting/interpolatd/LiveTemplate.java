@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * The interpolation of a template that is being edited, such as a document
+ * open in an editor. After an edit, only the region around the edit is 
+ * scanned and rendered again, and only the placeholders found there are
+ * substituted; the values of all other placeholders, and how they were
+ * rendered, are kept.
+ * <p>
+ * A live template is not thread-safe.
+ * 
+ * @author Luis Antunes
+ */
+public interface LiveTemplate<T> {
+
+    /**
+     * Returns the template, as it is after the edits made so far. It is
+     * built the first time it is asked for after an edit.
+     */
+    String template();
+    
+    /**
+     * Returns the result of the interpolation of the template. It is 
+     * assembled from the rendered regions the first time it is asked for
+     * after an edit.
+     */
+    String result();
+    
+    /**
+     * Replaces the removed characters of the template at the given offset
+     * with the inserted text, and renders the region around it again.
+     */
+    void edit(int offset, int removed, String inserted);
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.bigtesting.interpolatd.core.BoundedExecutor;
+import org.bigtesting.interpolatd.core.ParallelSubstitution;
+
+/**
+ * Interpolates on an Executor, for Substitutors that block on I/O. At most
+ * maxConcurrency interpolations or substitutions run at any time; callers
+ * block when the limit is reached. The engine holds no locks while a 
+ * Substitutor runs, so an Executor that starts a virtual thread per task
+ * can be used without pinning its carrier threads.
+ *
+ * @author Luis Antunes
+ */
+public class RenderingService<T> {
+
+    private final Interpolator<T> interpolator;
+
+    private final BoundedExecutor executor;
+
+    public RenderingService(Interpolator<T> interpolator, Executor executor, int maxConcurrency) {
+
+        if (interpolator == null) {
+            throw new IllegalArgumentException("interpolator cannot be null");
+        }
+        this.interpolator = interpolator;
+        this.executor = new BoundedExecutor(executor, maxConcurrency);
+    }
+
+    /**
+     * Interpolates the given string as a task on the Executor, blocking
+     * until the concurrency limit allows the task to be submitted.
+     */
+    public Future<String> submit(final String toInterpolate, final T arg) throws InterruptedException {
+
+        return executor.submit(new Callable<String>() {
+            public String call() {
+                return interpolator.interpolate(toInterpolate, arg);
+            }
+        });
+    }
+
+    /**
+     * Interpolates the given string, substituting each placeholder as a
+     * separate task on the Executor. Escaped placeholders are not 
+     * substituted, but overlapped ones, which a sequential interpolation
+     * would have skipped, are.
+     */
+    public String interpolate(String toInterpolate, T arg) throws InterruptedException {
+
+        return new ParallelSubstitution<T>(interpolator.compiled(toInterpolate), executor)
+            .interpolate(arg);
+    }
+}
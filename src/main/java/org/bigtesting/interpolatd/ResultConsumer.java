@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * Receives the results of a batch interpolation, one argument at a time.
+ * The result is only valid for the duration of the call, as its buffer 
+ * is reused for the next argument; call toString() on it to keep it.
+ * 
+ * @author Luis Antunes
+ */
+public interface ResultConsumer<T> {
+
+    void accept(T arg, CharSequence result);
+}
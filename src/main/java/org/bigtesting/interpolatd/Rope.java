@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The result of an interpolation as a sequence of slices of the template
+ * and of the substituted values, none of which are copied. Writing a rope
+ * out writes each slice in turn, so the literal text of a large template 
+ * is never copied into an intermediate buffer. A flat String is only 
+ * built if the rope is used as a CharSequence in a way that needs one.
+ * 
+ * @author Luis Antunes
+ */
+public final class Rope implements CharSequence {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final int BYTE_BUFFER_SIZE = 8192;
+    
+    private final String[] parts;
+    
+    private final int[] starts;
+    
+    private final int[] ends;
+    
+    /* the index in the rope at which each part begins */
+    private final int[] offsets;
+    
+    private final int length;
+    
+    private volatile String flat;
+    
+    Rope(String[] parts, int[] starts, int[] ends, int count) {
+        
+        this.parts = new String[count];
+        this.starts = new int[count];
+        this.ends = new int[count];
+        this.offsets = new int[count];
+        System.arraycopy(parts, 0, this.parts, 0, count);
+        System.arraycopy(starts, 0, this.starts, 0, count);
+        System.arraycopy(ends, 0, this.ends, 0, count);
+        
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = length;
+            length += ends[i] - starts[i];
+        }
+        this.length = length;
+    }
+    
+    public int length() {
+        
+        return length;
+    }
+    
+    public char charAt(int index) {
+        
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        int part = partAt(index);
+        return parts[part].charAt(starts[part] + index - offsets[part]);
+    }
+    
+    public CharSequence subSequence(int start, int end) {
+        
+        return toString().subSequence(start, end);
+    }
+    
+    public void writeTo(Writer writer) throws IOException {
+        
+        for (int i = 0; i < parts.length; i++) {
+            writer.write(parts[i], starts[i], ends[i] - starts[i]);
+        }
+    }
+    
+    /**
+     * Writes the rope to the channel, encoded in UTF-8.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        
+        writeTo(channel, UTF_8);
+    }
+    
+    public void writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+        
+        CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+        
+        /* holds a high surrogate left over at the end of a part until the next part */
+        CharBuffer carry = CharBuffer.allocate(2);
+        for (int i = 0; i < parts.length; i++) {
+            
+            CharBuffer chars = CharBuffer.wrap(parts[i], starts[i], ends[i]);
+            if (carry.position() > 0 && chars.hasRemaining()) {
+                carry.put(chars.get());
+                carry.flip();
+                encode(encoder, carry, bytes, channel, false);
+                carry.compact();
+            }
+            encode(encoder, chars, bytes, channel, false);
+            if (chars.hasRemaining()) {
+                carry.put(chars);
+            }
+        }
+        carry.flip();
+        encode(encoder, carry, bytes, channel, true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain(bytes, channel);
+        }
+        drain(bytes, channel);
+    }
+    
+    @Override
+    public String toString() {
+        
+        String flat = this.flat;
+        if (flat == null) {
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < parts.length; i++) {
+                sb.append(parts[i], starts[i], ends[i]);
+            }
+            flat = sb.toString();
+            this.flat = flat;
+        }
+        return flat;
+    }
+    
+    private int partAt(int index) {
+        
+        int low = 0, high = offsets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes, 
+            WritableByteChannel channel, boolean endOfInput) throws IOException {
+        
+        while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+            drain(bytes, channel);
+        }
+    }
+    
+    private static void drain(ByteBuffer bytes, WritableByteChannel channel) throws IOException {
+        
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
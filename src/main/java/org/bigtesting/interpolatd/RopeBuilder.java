@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * Collects the output of an interpolation as references to the strings
+ * appended to it, rather than as copies of their characters. Strings are
+ * immutable, so they can be referenced safely; any other CharSequence is
+ * copied when appended.
+ * 
+ * @author Luis Antunes
+ */
+final class RopeBuilder implements Appendable {
+
+    private String[] parts = new String[8];
+    
+    private int[] starts = new int[8];
+    
+    private int[] ends = new int[8];
+    
+    private int count;
+    
+    public RopeBuilder append(CharSequence csq) {
+        
+        if (csq == null) csq = "null";
+        return append(csq, 0, csq.length());
+    }
+    
+    public RopeBuilder append(CharSequence csq, int start, int end) {
+        
+        if (csq == null) csq = "null";
+        if (start == end) return this;
+        
+        if (!(csq instanceof String)) {
+            add(csq.subSequence(start, end).toString(), 0, end - start);
+        } else if (count > 0 && parts[count - 1] == csq && ends[count - 1] == start) {
+            ends[count - 1] = end;
+        } else {
+            add((String)csq, start, end);
+        }
+        return this;
+    }
+    
+    public RopeBuilder append(char c) {
+        
+        add(String.valueOf(c), 0, 1);
+        return this;
+    }
+    
+    public Rope build() {
+        
+        return new Rope(parts, starts, ends, count);
+    }
+    
+    private void add(String part, int start, int end) {
+        
+        if (count == parts.length) {
+            int capacity = count * 2;
+            String[] newParts = new String[capacity];
+            int[] newStarts = new int[capacity];
+            int[] newEnds = new int[capacity];
+            System.arraycopy(parts, 0, newParts, 0, count);
+            System.arraycopy(starts, 0, newStarts, 0, count);
+            System.arraycopy(ends, 0, newEnds, 0, count);
+            parts = newParts;
+            starts = newStarts;
+            ends = newEnds;
+        }
+        parts[count] = part;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+}
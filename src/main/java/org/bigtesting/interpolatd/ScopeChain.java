@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An interpolation argument made of layered maps, such as request, 
+ * session and global values, looked up in order without merging them.
+ * A name is looked up in each layer in turn, and the first non-null 
+ * value wins. The layers are not copied, so creating a chain is cheap
+ * and changes to the layers are visible through it.
+ * 
+ * @author Luis Antunes
+ */
+public final class ScopeChain {
+
+    private static final Object MISSING = new Object();
+    
+    private final Map<?, ?>[] layers;
+    
+    private final Map<String, Object> memo;
+    
+    private ScopeChain(Map<?, ?>[] layers, boolean memoize) {
+        
+        for (Map<?, ?> layer : layers) {
+            if (layer == null) {
+                throw new IllegalArgumentException("layers cannot be null");
+            }
+        }
+        this.layers = layers;
+        this.memo = memoize ? new HashMap<String, Object>() : null;
+    }
+    
+    /**
+     * Returns a chain of the given layers, the first taking precedence.
+     */
+    public static ScopeChain of(Map<?, ?>... layers) {
+        
+        return new ScopeChain(layers.clone(), false);
+    }
+    
+    /**
+     * Like {@link #of(Map...)}, but each name is looked up only once; 
+     * the value found is remembered for the life of the chain. Meant to
+     * be created for a single interpolation, on a single thread.
+     */
+    public static ScopeChain memoizing(Map<?, ?>... layers) {
+        
+        return new ScopeChain(layers.clone(), true);
+    }
+    
+    /**
+     * Returns the value of the given name in the first layer that has
+     * one, or null if none has.
+     */
+    public Object get(String name) {
+        
+        if (memo == null) {
+            return lookup(name);
+        }
+        
+        Object value = memo.get(name);
+        if (value == null) {
+            value = lookup(name);
+            memo.put(name, value != null ? value : MISSING);
+        }
+        return value != MISSING ? value : null;
+    }
+    
+    private Object lookup(String name) {
+        
+        for (Map<?, ?> layer : layers) {
+            Object value = layer.get(name);
+            if (value != null) return value;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * Substitutes the captured name with its value in a ScopeChain. A name
+ * with no value in any layer is left as it is.
+ * 
+ * @author Luis Antunes
+ */
+public class ScopedSubstitutor implements Substitutor<ScopeChain> {
+
+    public String substitute(String captured, ScopeChain scopes) {
+        
+        Object value = scopes.get(captured);
+        return value != null ? value.toString() : null;
+    }
+}
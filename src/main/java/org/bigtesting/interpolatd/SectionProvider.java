@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * Provides the rows a section of a template is repeated for. Each row is
+ * itself an interpolation argument. Returning null leaves the section as
+ * it is.
+ * 
+ * @author Luis Antunes
+ */
+public interface SectionProvider<T> {
+
+    Iterable<T> rows(String name, T arg);
+}
@@ -22,4 +22,12 @@
 public interface SubstitutionHandler<T> {
 
     void handleWith(Substitutor<T> substitutor);
+    
+    void handleWith(WritingSubstitutor<T> substitutor);
+    
+    void handleWithInt(IntSubstitutor<T> substitutor);
+    
+    void handleWithLong(LongSubstitutor<T> substitutor);
+    
+    void handleWithDouble(DoubleSubstitutor<T> substitutor);
 }
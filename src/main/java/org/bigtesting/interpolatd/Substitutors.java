@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.bigtesting.interpolatd.core.CachingSubstitutor;
+import org.bigtesting.interpolatd.core.FormattingSubstitutor;
+
+/**
+ * Factory methods for decorating Substitutors.
+ * 
+ * @author Luis Antunes
+ */
+public final class Substitutors {
+
+    private Substitutors() {}
+    
+    /**
+     * Returns a Substitutor that caches the values returned by the given
+     * Substitutor across interpolations, keyed by the captured value and
+     * by the key the given KeyExtractor derives from the argument. At most
+     * about maxSize values are kept, least recently used first out. Values
+     * older than the ttl are refreshed in the background while the stale
+     * value is still being returned; a ttl of 0 means values never go stale.
+     */
+    public static <T> Substitutor<T> caching(Substitutor<T> substitutor, int maxSize, 
+            long ttl, TimeUnit unit, KeyExtractor<T> keyExtractor) {
+        
+        return caching(substitutor, maxSize, ttl, unit, keyExtractor, null);
+    }
+    
+    /**
+     * Like {@link #caching(Substitutor, int, long, TimeUnit, KeyExtractor)},
+     * but stale values are refreshed on the given Executor.
+     */
+    public static <T> Substitutor<T> caching(Substitutor<T> substitutor, int maxSize, 
+            long ttl, TimeUnit unit, KeyExtractor<T> keyExtractor, Executor refresher) {
+        
+        return new CachingSubstitutor<T>(substitutor, maxSize, unit.toNanos(ttl), 
+                keyExtractor, refresher);
+    }
+    
+    /**
+     * Returns a Substitutor that formats the values of the given 
+     * ValueSubstitutor according to the format spec in the placeholder, 
+     * as in MessageFormat: #{amount,number,#.##} or #{due,date,short}.
+     * The spec is parsed the first time it is rendered, and the formatted
+     * value is written straight into the output. A placeholder with no 
+     * spec gets the value's toString().
+     */
+    public static <T> WritingSubstitutor<T> formatting(ValueSubstitutor<T> substitutor, Locale locale) {
+        
+        return new FormattingSubstitutor<T>(substitutor, locale);
+    }
+    
+    /**
+     * Like {@link #formatting(ValueSubstitutor, Locale)}, in the default locale.
+     */
+    public static <T> WritingSubstitutor<T> formatting(ValueSubstitutor<T> substitutor) {
+        
+        return formatting(substitutor, Locale.getDefault());
+    }
+}
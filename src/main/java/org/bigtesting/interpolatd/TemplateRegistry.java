@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps rendered templates, and records the keys each of them uses, so 
+ * that when values change, only the templates that use the changed keys 
+ * are rendered again. The keys of a template are the captured values of
+ * its placeholders, including those of their fallbacks. 
+ * 
+ * @author Luis Antunes
+ */
+public interface TemplateRegistry<T> {
+
+    /**
+     * Registers the template under the given id, replacing any template 
+     * registered under it before, and renders it with the given argument.
+     */
+    void register(Object id, String template, T arg);
+    
+    void unregister(Object id);
+    
+    /**
+     * Returns the latest result of the template registered under the given
+     * id, or null if there is none.
+     */
+    String result(Object id);
+    
+    /**
+     * Returns the ids of the templates that use any of the given keys.
+     */
+    Set<Object> dependents(Collection<String> keys);
+    
+    /**
+     * Renders again the templates that use any of the changed keys, and 
+     * returns their ids.
+     */
+    Set<Object> refresh(Collection<String> changedKeys);
+    
+    /**
+     * Renders again the templates that use any of the changed keys, in 
+     * parallel on the given Executor, and returns their ids.
+     */
+    Set<Object> refresh(Collection<String> changedKeys, Executor executor);
+}
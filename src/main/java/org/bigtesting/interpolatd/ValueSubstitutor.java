@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+/**
+ * A Substitutor whose value is an object, such as a number or a date, 
+ * that is formatted by the Substitutor it is given to. Returning null 
+ * leaves the match as it is.
+ * 
+ * @author Luis Antunes
+ */
+public interface ValueSubstitutor<T> {
+
+    Object substitute(String name, T arg);
+}
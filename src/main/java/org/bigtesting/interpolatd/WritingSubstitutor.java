@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd;
+
+import java.io.IOException;
+
+/**
+ * A Substitutor that writes the value straight into the output, instead 
+ * of returning it, so that a large value never has to be held as a String.
+ * 
+ * @author Luis Antunes
+ */
+public interface WritingSubstitutor<T> {
+
+    /**
+     * Writes the value for the captured string to the output, and returns
+     * true, or returns false to leave the match as it is. When interpolating
+     * into a String or a StringBuilder, anything written before returning 
+     * false is discarded; when interpolating into any other Appendable, 
+     * nothing may be written before returning false.
+     */
+    boolean write(String captured, T arg, Appendable out) throws IOException;
+}
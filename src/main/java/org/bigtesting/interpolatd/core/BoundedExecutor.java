@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks on an Executor, with at most a given number of them running
+ * or queued at any time. Submitting blocks while the limit is reached.
+ * A task gives back its permit when it completes, or when it is cancelled.
+ *
+ * @author Luis Antunes
+ */
+public class BoundedExecutor {
+
+    private final Executor executor;
+
+    private final Semaphore permits;
+
+    public BoundedExecutor(Executor executor, int maxConcurrency) {
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    public <V> FutureTask<V> submit(Callable<V> callable) throws InterruptedException {
+
+        permits.acquire();
+        PermitTask<V> task = new PermitTask<V>(callable);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.release();
+            throw e;
+        }
+        return task;
+    }
+
+    public int availablePermits() {
+
+        return permits.availablePermits();
+    }
+
+    private class PermitTask<V> extends FutureTask<V> {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        PermitTask(Callable<V> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                release();
+            }
+        }
+
+        /* a task cancelled before it runs may never be run at all */
+        @Override
+        protected void done() {
+            if (isCancelled()) release();
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bigtesting.interpolatd.CacheStats;
+import org.bigtesting.interpolatd.KeyExtractor;
+import org.bigtesting.interpolatd.Substitutor;
+
+/**
+ * A Substitutor that caches the values of another Substitutor across
+ * interpolations, keyed by the captured value and an argument key.
+ * <p>
+ * The cache is split into LRU stripes, whose hits take no lock, and no
+ * lock is held while the underlying Substitutor runs. Only one thread loads a
+ * missing value; concurrent callers for the same key wait for that load.
+ * Once a value is older than the ttl, the stale value keeps being served
+ * while a single background refresh replaces it.
+ *
+ * @author Luis Antunes
+ */
+public class CachingSubstitutor<T> implements Substitutor<T> {
+
+    private static final int MAX_STRIPES = 16;
+
+    private static final int MAX_QUEUED_REFRESHES = 1024;
+
+    private final Substitutor<T> substitutor;
+    private final KeyExtractor<T> keyExtractor;
+    private final long ttlNanos;
+    private final Executor refresher;
+
+    private final List<LruCache<Key, Entry>> stripes;
+
+    public CachingSubstitutor(Substitutor<T> substitutor, int maxSize, long ttlNanos,
+            KeyExtractor<T> keyExtractor, Executor refresher) {
+
+        if (substitutor == null) {
+            throw new IllegalArgumentException("substitutor cannot be null");
+        }
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("keyExtractor cannot be null");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (ttlNanos < 0) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        this.substitutor = substitutor;
+        this.keyExtractor = keyExtractor;
+        this.ttlNanos = ttlNanos;
+        this.refresher = refresher != null ? refresher : DefaultRefresher.EXECUTOR;
+
+        int stripeCount = Math.min(MAX_STRIPES, maxSize);
+        int stripeSize = (maxSize + stripeCount - 1) / stripeCount;
+        this.stripes = new ArrayList<LruCache<Key, Entry>>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new LruCache<Key, Entry>(stripeSize, Long.MAX_VALUE));
+        }
+    }
+
+    public String substitute(String captured, T arg) {
+
+        Object argKey = keyExtractor.keyFor(arg);
+        if (argKey == null) {
+            return substitutor.substitute(captured, arg);
+        }
+
+        Key key = new Key(captured, argKey);
+        LruCache<Key, Entry> stripe = stripeFor(key);
+
+        Entry entry = stripe.get(key);
+        if (entry == null) {
+            Entry created = new Entry(load(captured, arg));
+            entry = stripe.putIfAbsent(key, created, 1);
+            if (entry == null) {
+                entry = created;
+                created.load.run();
+            }
+        }
+
+        String value = await(entry, key, stripe, arg);
+
+        if (ttlNanos > 0 && entry.isStale(ttlNanos) && entry.refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(refresh(entry, captured, arg));
+            } catch (RejectedExecutionException e) {
+                entry.refreshing.set(false);
+            }
+        }
+        return value;
+    }
+
+    public CacheStats stats() {
+
+        long hits = 0, misses = 0, evictions = 0;
+        int size = 0;
+        for (LruCache<Key, Entry> stripe : stripes) {
+            CacheStats stats = stripe.stats();
+            hits += stats.hits();
+            misses += stats.misses();
+            evictions += stats.evictions();
+            size += stats.size();
+        }
+        return new CacheStats(hits, misses, evictions, size);
+    }
+
+    private LruCache<Key, Entry> stripeFor(Key key) {
+
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes.get((h & 0x7fffffff) % stripes.size());
+    }
+
+    private String await(Entry entry, Key key, LruCache<Key, Entry> stripe, T arg) {
+
+        try {
+            entry.load.get();
+            return entry.value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return substitutor.substitute(key.captured, arg);
+        } catch (ExecutionException e) {
+            /* don't cache failures; the next caller tries again */
+            stripe.remove(key, entry);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private Callable<String> load(final String captured, final T arg) {
+
+        return new Callable<String>() {
+            public String call() {
+                return substitutor.substitute(captured, arg);
+            }
+        };
+    }
+
+    private Runnable refresh(final Entry entry, final String captured, final T arg) {
+
+        return new Runnable() {
+            public void run() {
+                try {
+                    entry.set(substitutor.substitute(captured, arg));
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            }
+        };
+    }
+
+    private static class Entry {
+
+        private final FutureTask<String> load;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private volatile String value;
+        private volatile long loadedAt;
+
+        Entry(final Callable<String> loader) {
+            this.load = new FutureTask<String>(new Callable<String>() {
+                public String call() throws Exception {
+                    String value = loader.call();
+                    set(value);
+                    return value;
+                }
+            });
+        }
+
+        void set(String value) {
+            this.value = value;
+            this.loadedAt = System.nanoTime();
+        }
+
+        boolean isStale(long ttlNanos) {
+            return System.nanoTime() - loadedAt >= ttlNanos;
+        }
+    }
+
+    private static class Key {
+
+        private final String captured;
+        private final Object argKey;
+
+        Key(String captured, Object argKey) {
+            this.captured = captured;
+            this.argKey = argKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key)o;
+            return captured.equals(that.captured) && argKey.equals(that.argKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * captured.hashCode() + argKey.hashCode();
+        }
+    }
+
+    /*
+     * Bounded in threads and in queued refreshes. A refresh that is 
+     * rejected is simply tried again by a later caller, while the stale
+     * value keeps being served.
+     */
+    private static class DefaultRefresher {
+
+        static final Executor EXECUTOR = newExecutor();
+
+        private static Executor newExecutor() {
+
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REFRESHES),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "interpolatd-refresher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.SubstitutionHandler;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class CompiledTemplateImpl<T> implements CompiledTemplate<T> {
+
+    private final CharSequence source;
+
+    /* null unless the source is a String */
+    private final String template;
+
+    private final List<Match<T>> matches;
+
+    private final boolean[] actualEscapes;
+
+    private final boolean[] escaped;
+
+    private final Expansion<T> expansion;
+
+    private volatile EncodedLiterals literals;
+
+    public CompiledTemplateImpl(String template, List<Match<T>> matches) {
+
+        this(template, matches, null);
+    }
+
+    /**
+     * With an expansion, substituted values are themselves interpolated.
+     */
+    public CompiledTemplateImpl(String template, List<Match<T>> matches, Expansion<T> expansion) {
+
+        this((CharSequence)template, matches, expansion);
+    }
+
+    /**
+     * Compiles a template that is any CharSequence, such as a StringBuilder
+     * or a CharBuffer. The source is not copied, and literal text is 
+     * appended from it as it is rendered, so it must not change for as 
+     * long as the compiled template is used.
+     */
+    public CompiledTemplateImpl(CharSequence source, List<Match<T>> matches, Expansion<T> expansion) {
+
+        this.source = source;
+        this.template = source instanceof String ? (String)source : null;
+        this.expansion = expansion;
+        this.matches = new ArrayList<Match<T>>(matches);
+        Collections.sort(this.matches);
+        this.actualEscapes = resolveEscapes(this.matches);
+        this.escaped = resolveEscaped(this.matches, actualEscapes);
+    }
+
+    public String template() {
+
+        return template != null ? template : source.toString();
+    }
+
+    public String interpolate(T arg) {
+
+        StringBuilder sb = new StringBuilder(source.length());
+        interpolate(arg, sb);
+        return sb.toString();
+    }
+
+    public List<Match<T>> matches() {
+
+        return Collections.unmodifiableList(matches);
+    }
+
+    public void interpolate(T arg, StringBuilder sb) {
+
+        interpolate(arg, sb, null);
+    }
+
+    /**
+     * When values is not null, it holds the value of every non-escape
+     * match, by match index, and the Substitutors are not called.
+     */
+    public void interpolate(T arg, StringBuilder sb, String[] values) {
+
+        try {
+            render(arg, sb, values, newExpansion());
+        } catch (IOException e) {
+            /* only a WritingSubstitutor can fail, since a StringBuilder doesn't */
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void interpolate(T arg, Appendable out) throws IOException {
+
+        render(arg, out, null, newExpansion());
+    }
+
+    /**
+     * Writes the result of the interpolation to the channel in UTF-8, with
+     * a gathering write. The literal text of the template is encoded the 
+     * first time this is done, and only the values are encoded afterwards.
+     */
+    public void interpolate(T arg, GatheringByteChannel channel) throws IOException {
+
+        EncodedLiterals literals = this.literals;
+        if (literals == null && template != null) {
+            literals = new EncodedLiterals(template, matches);
+            this.literals = literals;
+        }
+        /* without a String template, all of the output is encoded as it is rendered */
+        GatheringOutput out = new GatheringOutput(template, literals);
+        render(arg, out, null, newExpansion());
+        out.writeTo(channel);
+    }
+
+    public Map<SubstitutionHandler<T>, Set<String>> placeholders() {
+
+        Map<SubstitutionHandler<T>, Set<String>> placeholders = 
+                new LinkedHashMap<SubstitutionHandler<T>, Set<String>>();
+        addPlaceholders(placeholders);
+        return placeholders;
+    }
+
+    /*
+     * Walks the matches as render() does, taking every value to be there.
+     * Sections aren't placeholders, and are left out.
+     */
+    private void addPlaceholders(Map<SubstitutionHandler<T>, Set<String>> placeholders) {
+
+        int lastEnd = 0;
+        Match<T> lastEscape = null;
+        for (int i = 0; i < matches.size(); i++) {
+
+            Match<T> match = matches.get(i);
+
+            if (match.start() < lastEnd) continue;
+
+            if (match.isEscape()) {
+
+                if (lastEscape != null && match.isAfter(lastEscape)) continue;
+                if (!actualEscapes[i]) continue;
+                lastEscape = match;
+
+            } else if (lastEscape == null || !match.isAfter(lastEscape)) {
+
+                if (!(match.handler() instanceof SectionHandlerImpl)) {
+                    Set<String> captured = placeholders.get(match.handler());
+                    if (captured == null) {
+                        captured = new LinkedHashSet<String>();
+                        placeholders.put(match.handler(), captured);
+                    }
+                    captured.add(match.captured());
+                }
+                if (match.fallback() != null) {
+                    match.fallback().addPlaceholders(placeholders);
+                }
+            }
+            lastEnd = match.end();
+        }
+    }
+
+    /**
+     * Returns whether the match at the given index is a placeholder that
+     * every render leaves escaped, whatever the values, so that it need
+     * not be substituted.
+     */
+    public boolean isEscaped(int index) {
+
+        return escaped[index];
+    }
+
+    private Expansion<T> newExpansion() {
+
+        return expansion != null ? expansion.forRender() : null;
+    }
+
+    void render(T arg, Appendable out, String[] values, Expansion<T> expansion) throws IOException {
+
+        int copied = 0;
+        int lastEnd = 0;
+        Match<T> lastEscape = null;
+        for (int i = 0; i < matches.size(); i++) {
+
+            Match<T> match = matches.get(i);
+
+            if (match.start() < lastEnd) continue;
+
+            String value;
+            if (match.isEscape()) {
+
+                if (lastEscape != null && match.isAfter(lastEscape)) {
+                    continue;
+                }
+
+                if (actualEscapes[i]) {
+                    lastEscape = match;
+                } else {
+                    continue;
+                }
+                value = "";
+
+            } else if (lastEscape != null && match.isAfter(lastEscape)) {
+
+                lastEnd = match.end();
+                continue;
+
+            } else if (values == null && expansion == null && match.isWriting()) {
+
+                copy(out, copied, match.start());
+                copied = match.start();
+                int mark = out instanceof StringBuilder ? ((StringBuilder)out).length() : -1;
+                if (!match.write(arg, out)) {
+                    if (mark >= 0) ((StringBuilder)out).setLength(mark);
+                    if (match.fallback() == null) continue;
+                    match.fallback().render(arg, out, null, expansion);
+                }
+                copied = match.end();
+                lastEnd = match.end();
+                continue;
+
+            } else {
+
+                if (expansion == null) {
+                    value = values != null ? values[i] : match.substitute(arg);
+                } else {
+                    value = values != null ? expansion.expand(match, values[i], arg) : 
+                        expansion.substitute(match, arg);
+                }
+            }
+
+            if (value == null && match.fallback() == null) continue;
+
+            copy(out, copied, match.start());
+            if (value != null) {
+                out.append(value);
+            } else {
+                match.fallback().render(arg, out, null, expansion);
+            }
+            copied = match.end();
+            lastEnd = match.end();
+        }
+        copy(out, copied, source.length());
+    }
+
+    private void copy(Appendable out, int from, int to) throws IOException {
+
+        if (from == to) return;
+        if (template != null && out instanceof Writer) {
+            ((Writer)out).write(template, from, to - from);
+        } else {
+            out.append(source, from, to);
+        }
+    }
+
+    /*
+     * An escape is an actual escape if it is immediately followed by a
+     * non-escape match, or by an escape that is itself an actual escape.
+     * Walking the matches backwards resolves every escape in a single
+     * pass, no matter how long a run of adjacent escapes is.
+     */
+    private static <T> boolean[] resolveEscapes(List<Match<T>> matches) {
+
+        boolean[] actualEscapes = new boolean[matches.size()];
+        for (int i = matches.size() - 2; i >= 0; i--) {
+
+            Match<T> esc = matches.get(i);
+            if (!esc.isEscape()) continue;
+
+            Match<T> next = matches.get(i + 1);
+            if (!next.isAfter(esc)) continue;
+
+            actualEscapes[i] = !next.isEscape() || actualEscapes[i + 1];
+        }
+        return actualEscapes;
+    }
+
+    /*
+     * Follows render() through the escapes. Whether an escape is rendered
+     * as the last escape is only certain when no earlier match overlaps
+     * it, since whether that match is rendered depends on its value; a 
+     * placeholder after an uncertain escape is not considered escaped.
+     */
+    private static <T> boolean[] resolveEscaped(List<Match<T>> matches, boolean[] actualEscapes) {
+
+        final int no = 0, yes = 1, unknown = -1;
+        int[] lastEscape = new int[matches.size()];
+        boolean[] escaped = new boolean[matches.size()];
+        int maxEnd = 0;
+        for (int i = 0; i < matches.size(); i++) {
+
+            Match<T> match = matches.get(i);
+            Match<T> previous = i > 0 ? matches.get(i - 1) : null;
+            boolean afterEscape = previous != null && previous.isEscape() && match.isAfter(previous);
+
+            if (match.isEscape()) {
+                if (match.start() < maxEnd) {
+                    lastEscape[i] = unknown;
+                } else if (!actualEscapes[i]) {
+                    lastEscape[i] = no;
+                } else if (afterEscape && lastEscape[i - 1] != no) {
+                    lastEscape[i] = lastEscape[i - 1] == yes ? no : unknown;
+                } else {
+                    lastEscape[i] = yes;
+                }
+            } else {
+                escaped[i] = afterEscape && lastEscape[i - 1] == yes;
+            }
+            maxEnd = Math.max(maxEnd, match.end());
+        }
+        return escaped;
+    }
+}
@@ -29,23 +29,36 @@
     private final String opening;
     private final String closing;
     
-    private final Pattern pattern;
+    private final SharedPattern pattern;
+    
+    private final boolean stopsAtWhitespace;
     
     public EnclosureClosingHandlerImpl(String opening, String closing, String characterClass) {
         
         this.opening = opening;
         this.closing = closing;
+        this.stopsAtWhitespace = characterClass == null && 
+                !hasWhitespace(opening) && !hasWhitespace(closing);
         
         String quotedOpening = Pattern.quote(opening);
         String quotedClosing = Pattern.quote(closing);
         if (characterClass == null) {
             characterClass = "[^" + quotedOpening + quotedClosing + "\\s]+";
         }
-        this.pattern = Pattern.compile("(" + quotedOpening + characterClass + quotedClosing + ")");
+        this.pattern = SharedPatterns.intern("(" + quotedOpening + characterClass + quotedClosing + ")");
+    }
+
+    /**
+     * Only the default character class is known to exclude whitespace.
+     */
+    @Override
+    public boolean stopsAtWhitespace() {
+        
+        return stopsAtWhitespace;
     }
 
     @Override
-    protected Pattern getPattern() {
+    protected SharedPattern getPattern() {
         
         return pattern;
     }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The text of a compiled template, encoded in UTF-8 once, so that any of
+ * its literal runs can be output as a slice of the encoded bytes. Literal
+ * runs always begin and end at the start or end of the template or of a
+ * match, so the byte offset is only kept for those character indexes.
+ * 
+ * @author Luis Antunes
+ */
+class EncodedLiterals {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final ByteBuffer bytes;
+    
+    private final int[] boundaries;
+    
+    private final int[] byteOffsets;
+    
+    <T> EncodedLiterals(String template, List<Match<T>> matches) {
+        
+        int[] boundaries = new int[matches.size() * 2 + 2];
+        int count = 0;
+        boundaries[count++] = 0;
+        boundaries[count++] = template.length();
+        for (Match<T> match : matches) {
+            boundaries[count++] = match.start();
+            boundaries[count++] = match.end();
+        }
+        Arrays.sort(boundaries);
+        
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || boundaries[i] != boundaries[i - 1]) {
+                boundaries[unique++] = boundaries[i];
+            }
+        }
+        
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(template.length());
+        int[] byteOffsets = new int[unique];
+        for (int i = 1; i < unique; i++) {
+            byte[] run = template.substring(boundaries[i - 1], boundaries[i]).getBytes(UTF_8);
+            encoded.write(run, 0, run.length);
+            byteOffsets[i] = encoded.size();
+        }
+        
+        this.bytes = ByteBuffer.wrap(encoded.toByteArray()).asReadOnlyBuffer();
+        this.boundaries = Arrays.copyOf(boundaries, unique);
+        this.byteOffsets = byteOffsets;
+    }
+    
+    /**
+     * Returns the encoded bytes of the template text between the given 
+     * character indexes, or null if they are not both boundaries.
+     */
+    ByteBuffer slice(int from, int to) {
+        
+        int first = Arrays.binarySearch(boundaries, from);
+        int last = Arrays.binarySearch(boundaries, to);
+        if (first < 0 || last < 0) return null;
+        
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(byteOffsets[last]).position(byteOffsets[first]);
+        return slice;
+    }
+}
@@ -17,7 +17,6 @@
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -27,22 +26,27 @@
 public class EscapeHandler<T> implements Interpolating<T> {
 
     private final String escape;
-    private final Pattern pattern;
+    private final SharedPattern pattern;
     
     public EscapeHandler(String escape) {
         
         this.escape = escape;
-        this.pattern = Pattern.compile("(" + Pattern.quote(escape) + ")");
+        this.pattern = SharedPatterns.intern("(" + Pattern.quote(escape) + ")");
     }
 
-    public List<Substitution> interpolate(String toInterpolate, T arg) {
+    public boolean stopsAtWhitespace() {
         
-        List<Substitution> substitutions = new ArrayList<Substitution>(); 
-        Matcher m = pattern.matcher(toInterpolate);
+        return !SubstitutionHandlerImpl.hasWhitespace(escape);
+    }
+
+    public List<Match<T>> match(CharSequence toInterpolate, int from, int to) {
+        
+        List<Match<T>> matches = new ArrayList<Match<T>>(); 
+        RangeMatcher m = new RangeMatcher(pattern, toInterpolate, from, to);
         while (m.find()) {
-            substitutions.add(new Substitution(escape, "", m.start(), m.end(), true));
+            matches.add(new Match<T>(escape, m.start(), m.end()));
         }
 
-        return substitutions;
+        return matches;
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expands substituted values that contain placeholders themselves, 
+ * through the same handlers, for the duration of a single render.
+ * <p>
+ * A value is expanded once per render for each distinct placeholder; 
+ * the expanded value is remembered and reused. Placeholders being 
+ * expanded are tracked, so that a placeholder whose value leads back to 
+ * itself is reported rather than expanded forever, as is a chain of 
+ * expansions deeper than the limit.
+ * 
+ * @author Luis Antunes
+ */
+public class Expansion<T> {
+
+    private static final String MISSING = new String();
+
+    private final TemplateCompiler<T> compiler;
+    
+    private final int maxDepth;
+    
+    private final Map<Key, String> expanded;
+    
+    private final Set<Key> expanding;
+    
+    public Expansion(TemplateCompiler<T> compiler, int maxDepth) {
+        
+        this(compiler, maxDepth, false);
+    }
+    
+    private Expansion(TemplateCompiler<T> compiler, int maxDepth, boolean render) {
+        
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be positive");
+        }
+        this.compiler = compiler;
+        this.maxDepth = maxDepth;
+        this.expanded = render ? new HashMap<Key, String>() : null;
+        this.expanding = render ? new LinkedHashSet<Key>() : null;
+    }
+    
+    /**
+     * Returns the state for a single render.
+     */
+    public Expansion<T> forRender() {
+        
+        return new Expansion<T>(compiler, maxDepth, true);
+    }
+    
+    /**
+     * Substitutes the match and expands its value, unless this was done 
+     * for the same placeholder before.
+     */
+    String substitute(Match<T> match, T arg) throws IOException {
+        
+        Key key = new Key(match.handler(), match.captured());
+        String result = expanded.get(key);
+        if (result == null) {
+            result = expand(key, match.substitute(arg), arg);
+        }
+        return result != MISSING ? result : null;
+    }
+    
+    /**
+     * Expands a value the match was already substituted with.
+     */
+    String expand(Match<T> match, String value, T arg) throws IOException {
+        
+        Key key = new Key(match.handler(), match.captured());
+        String result = expanded.get(key);
+        if (result == null) {
+            result = expand(key, value, arg);
+        }
+        return result != MISSING ? result : null;
+    }
+    
+    private String expand(Key key, String value, T arg) throws IOException {
+        
+        String result;
+        if (value == null) {
+            expanded.put(key, MISSING);
+            return MISSING;
+        }
+        
+        CompiledTemplateImpl<T> template = compiler.compile(value);
+        if (template.matches().isEmpty()) {
+            result = value;
+        } else {
+            
+            if (expanding.contains(key)) {
+                throw new IllegalStateException("cycle in expansion: " + path(key));
+            }
+            if (expanding.size() == maxDepth) {
+                throw new IllegalStateException("expansion deeper than " + maxDepth + ": " + path(key));
+            }
+            expanding.add(key);
+            try {
+                StringBuilder sb = new StringBuilder(value.length());
+                template.render(arg, sb, null, this);
+                result = sb.toString();
+            } finally {
+                expanding.remove(key);
+            }
+        }
+        expanded.put(key, result);
+        return result;
+    }
+    
+    private String path(Key last) {
+        
+        StringBuilder path = new StringBuilder();
+        for (Key key : expanding) {
+            path.append(key.captured).append(" -> ");
+        }
+        return path.append(last.captured).toString();
+    }
+    
+    private static class Key {
+        
+        private final SubstitutionHandlerImpl<?> handler;
+        private final String captured;
+        
+        Key(SubstitutionHandlerImpl<?> handler, String captured) {
+            this.handler = handler;
+            this.captured = captured;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key)o;
+            return handler == that.handler && captured.equals(that.captured);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(handler) + captured.hashCode();
+        }
+    }
+}
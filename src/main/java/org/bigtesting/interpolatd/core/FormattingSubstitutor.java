@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bigtesting.interpolatd.ValueSubstitutor;
+
+/**
+ * Formats the values of a ValueSubstitutor according to a format spec 
+ * following the name in the captured string, as in MessageFormat:
+ * <i>name</i>, <i>name,number</i>, <i>name,number,integer|currency|percent|pattern</i>,
+ * <i>name,date</i>, <i>name,date,short|medium|long|full|pattern</i>, and the same for 
+ * <i>time</i>.
+ * <p>
+ * The spec is parsed once, the first time the placeholder is rendered, 
+ * and kept on the match along with its Format. Formats are not 
+ * thread-safe, so a thread takes the spec's Format while it formats, and
+ * one that finds it taken creates another; the last one given back is
+ * kept for the next value.
+ * 
+ * @author Luis Antunes
+ */
+public class FormattingSubstitutor<T> implements PreparingSubstitutor<T> {
+
+    private final ValueSubstitutor<T> substitutor;
+    
+    private final Locale locale;
+    
+    public FormattingSubstitutor(ValueSubstitutor<T> substitutor, Locale locale) {
+        
+        if (substitutor == null) {
+            throw new IllegalArgumentException("substitutor cannot be null");
+        }
+        if (locale == null) {
+            throw new IllegalArgumentException("locale cannot be null");
+        }
+        this.substitutor = substitutor;
+        this.locale = locale;
+    }
+    
+    public Object prepare(String captured) {
+        
+        return parse(captured);
+    }
+    
+    public boolean write(String captured, T arg, Appendable out) throws IOException {
+        
+        return write(parse(captured), arg, out);
+    }
+    
+    public boolean write(Object prepared, T arg, Appendable out) throws IOException {
+        
+        Spec spec = (Spec)prepared;
+        Object value = substitutor.substitute(spec.name, arg);
+        if (value == null) return false;
+        
+        if (spec.type == null) {
+            out.append(value.toString());
+        } else {
+            Formatter formatter = spec.idle.getAndSet(null);
+            if (formatter == null) {
+                formatter = new Formatter(newFormat(spec.type, spec.style));
+            }
+            try {
+                out.append(formatter.format(value));
+            } finally {
+                spec.idle.set(formatter);
+            }
+        }
+        return true;
+    }
+    
+    private Spec parse(String captured) {
+        
+        String[] parts = captured.split(",", 3);
+        String name = parts[0].trim();
+        if (parts.length == 1) {
+            return new Spec(name, null, null);
+        }
+        
+        String type = parts[1].trim();
+        String style = parts.length == 3 ? parts[2] : null;
+        if (!type.equals("number") && !type.equals("date") && !type.equals("time")) {
+            throw new IllegalArgumentException("unknown format type '" + type + "' in: " + captured);
+        }
+        
+        /* an invalid pattern is reported right away, rather than for a value */
+        Spec spec = new Spec(name, type, style);
+        spec.idle.set(new Formatter(newFormat(type, style)));
+        return spec;
+    }
+    
+    private Format newFormat(String type, String style) {
+        
+        String s = style == null ? null : style.trim();
+        if (type.equals("number")) {
+            
+            if (s == null) return NumberFormat.getInstance(locale);
+            if (s.equals("integer")) return NumberFormat.getIntegerInstance(locale);
+            if (s.equals("currency")) return NumberFormat.getCurrencyInstance(locale);
+            if (s.equals("percent")) return NumberFormat.getPercentInstance(locale);
+            return new DecimalFormat(style, DecimalFormatSymbols.getInstance(locale));
+        }
+        
+        int dateStyle = s == null ? DateFormat.MEDIUM : dateStyle(s);
+        if (dateStyle < 0) {
+            return new SimpleDateFormat(style, locale);
+        }
+        return type.equals("date") ? 
+                DateFormat.getDateInstance(dateStyle, locale) : 
+                DateFormat.getTimeInstance(dateStyle, locale);
+    }
+    
+    private static int dateStyle(String style) {
+        
+        if (style.equals("short")) return DateFormat.SHORT;
+        if (style.equals("medium")) return DateFormat.MEDIUM;
+        if (style.equals("long")) return DateFormat.LONG;
+        if (style.equals("full")) return DateFormat.FULL;
+        return -1;
+    }
+    
+    private static class Spec {
+        
+        private final String name;
+        private final String type;
+        private final String style;
+        private final AtomicReference<Formatter> idle = new AtomicReference<Formatter>();
+        
+        Spec(String name, String type, String style) {
+            this.name = name;
+            this.type = type;
+            this.style = style;
+        }
+    }
+    
+    /*
+     * A Format with the buffer it formats into, used by one thread at a time.
+     */
+    private static class Formatter {
+        
+        private final Format format;
+        private final StringBuffer buffer = new StringBuffer();
+        private final FieldPosition position = new FieldPosition(0);
+        
+        Formatter(Format format) {
+            this.format = format;
+        }
+        
+        CharSequence format(Object value) {
+            buffer.setLength(0);
+            return format.format(value, buffer, position);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bigtesting.interpolatd.WritingSubstitutor;
+
+/**
+ * Named templates that are included into other templates by name. Each
+ * fragment is compiled once, the first time it is included, and the 
+ * compiled form is shared by every template that includes it. A constant
+ * fragment, one whose result doesn't depend on the argument, is rendered 
+ * only once, and its result is included as is from then on.
+ * <p>
+ * The fragments being included are tracked for each thread, so that a
+ * fragment that includes itself, directly or through others, is reported
+ * rather than included forever, as is a chain of includes deeper than 
+ * MAX_DEPTH.
+ * 
+ * @author Luis Antunes
+ */
+public class Fragments<T> implements WritingSubstitutor<T> {
+
+    private static final int MAX_DEPTH = 64;
+    
+    private final TemplateCompiler<T> compiler;
+    
+    private final ThreadLocal<Set<String>> including = new ThreadLocal<Set<String>>() {
+        @Override
+        protected Set<String> initialValue() {
+            return new LinkedHashSet<String>();
+        }
+    };
+    
+    private final ConcurrentMap<String, Fragment<T>> fragments = 
+            new ConcurrentHashMap<String, Fragment<T>>();
+    
+    public Fragments(TemplateCompiler<T> compiler) {
+        
+        this.compiler = compiler;
+    }
+    
+    public void register(String name, String template, boolean constant) {
+        
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (template == null) {
+            throw new IllegalArgumentException("template cannot be null");
+        }
+        fragments.put(name, new Fragment<T>(template, constant));
+    }
+    
+    public void unregister(String name) {
+        
+        fragments.remove(name);
+    }
+    
+    /**
+     * Forgets the compiled and rendered forms of all fragments, which 
+     * are recreated the next time the fragments are included.
+     */
+    public void reset() {
+        
+        for (Fragment<T> fragment : fragments.values()) {
+            fragment.compiled = null;
+            fragment.rendered = null;
+        }
+    }
+    
+    public boolean write(String name, T arg, Appendable out) throws IOException {
+        
+        Fragment<T> fragment = fragments.get(name);
+        if (fragment == null) return false;
+        
+        String rendered = fragment.rendered;
+        if (rendered != null) {
+            out.append(rendered);
+            return true;
+        }
+        
+        CompiledTemplateImpl<T> compiled = fragment.compiled;
+        if (compiled == null) {
+            compiled = compiler.compile(fragment.template);
+            fragment.compiled = compiled;
+        }
+        
+        Set<String> active = including.get();
+        if (active.contains(name)) {
+            throw new IllegalStateException("cycle in fragments: " + path(active, name));
+        }
+        if (active.size() == MAX_DEPTH) {
+            throw new IllegalStateException("fragments nested deeper than " + MAX_DEPTH + 
+                    ": " + path(active, name));
+        }
+        active.add(name);
+        try {
+            if (fragment.constant) {
+                rendered = compiled.interpolate(arg);
+                fragment.rendered = rendered;
+                out.append(rendered);
+            } else {
+                compiled.interpolate(arg, out);
+            }
+        } finally {
+            active.remove(name);
+        }
+        return true;
+    }
+    
+    private static String path(Set<String> active, String last) {
+        
+        StringBuilder path = new StringBuilder();
+        for (String name : active) {
+            path.append(name).append(" -> ");
+        }
+        return path.append(last).toString();
+    }
+    
+    /*
+     * Racing threads may both compile or render a fragment; they produce
+     * the same result, and the last one stored wins.
+     */
+    private static class Fragment<T> {
+        
+        private final String template;
+        private final boolean constant;
+        
+        private volatile CompiledTemplateImpl<T> compiled;
+        private volatile String rendered;
+        
+        Fragment(String template, boolean constant) {
+            this.template = template;
+            this.constant = constant;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+/**
+ * The text of a template being edited, kept with a gap at the last edit,
+ * so that an edit only moves the characters between it and the last one.
+ * 
+ * @author Luis Antunes
+ */
+final class GapText implements CharSequence {
+
+    private char[] chars = new char[16];
+    
+    private int gapStart = 0;
+    
+    private int gapEnd = chars.length;
+    
+    public int length() {
+        
+        return chars.length - (gapEnd - gapStart);
+    }
+    
+    public char charAt(int index) {
+        
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length());
+        }
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+    
+    public CharSequence subSequence(int start, int end) {
+        
+        return substring(start, end);
+    }
+    
+    String substring(int start, int end) {
+        
+        StringBuilder sb = new StringBuilder(end - start);
+        appendTo(sb, start, end);
+        return sb.toString();
+    }
+    
+    void appendTo(StringBuilder sb, int start, int end) {
+        
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + 
+                    ", length: " + length());
+        }
+        if (start < gapStart) {
+            int to = Math.min(end, gapStart);
+            sb.append(chars, start, to - start);
+            start = to;
+        }
+        if (start < end) {
+            int gap = gapEnd - gapStart;
+            sb.append(chars, start + gap, end - start);
+        }
+    }
+    
+    void replace(int offset, int removed, String inserted) {
+        
+        moveGap(offset);
+        gapEnd += removed;
+        if (gapEnd - gapStart < inserted.length()) {
+            grow(inserted.length());
+        }
+        inserted.getChars(0, inserted.length(), chars, gapStart);
+        gapStart += inserted.length();
+    }
+    
+    @Override
+    public String toString() {
+        
+        return substring(0, length());
+    }
+    
+    private void moveGap(int offset) {
+        
+        if (offset < gapStart) {
+            int n = gapStart - offset;
+            System.arraycopy(chars, offset, chars, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (offset > gapStart) {
+            int n = offset - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+    
+    private void grow(int needed) {
+        
+        int tail = chars.length - gapEnd;
+        char[] grown = new char[Math.max(chars.length * 2, gapStart + needed + tail + 16)];
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+        gapEnd = grown.length - tail;
+        chars = grown;
+    }
+}
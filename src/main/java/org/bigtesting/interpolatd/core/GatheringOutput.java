@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the output of an interpolation as UTF-8 byte buffers, to be 
+ * written with a single gathering write. Literal runs of the template are
+ * slices of its pre-encoded bytes; only everything else is encoded.
+ * 
+ * @author Luis Antunes
+ */
+class GatheringOutput implements Appendable {
+
+    private final String template;
+    
+    private final EncodedLiterals literals;
+    
+    private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    
+    /* everything other than literals, copied since a CharSequence may change */
+    private final StringBuilder pending = new StringBuilder();
+    
+    GatheringOutput(String template, EncodedLiterals literals) {
+        
+        this.template = template;
+        this.literals = literals;
+    }
+    
+    public Appendable append(CharSequence csq) {
+        
+        if (csq == null) csq = "null";
+        return append(csq, 0, csq.length());
+    }
+    
+    public Appendable append(CharSequence csq, int start, int end) {
+        
+        if (csq == null) csq = "null";
+        if (start == end) return this;
+        
+        ByteBuffer slice = csq == template ? literals.slice(start, end) : null;
+        if (slice == null) {
+            pending.append(csq, start, end);
+        } else {
+            flush();
+            buffers.add(slice);
+        }
+        return this;
+    }
+    
+    public Appendable append(char c) {
+        
+        pending.append(c);
+        return this;
+    }
+    
+    /*
+     * Values are encoded together, so that consecutive appends, such as 
+     * the two halves of a surrogate pair, are encoded as one sequence.
+     */
+    private void flush() {
+        
+        if (pending.length() == 0) return;
+        buffers.add(EncodedLiterals.UTF_8.encode(CharBuffer.wrap(pending)));
+        pending.setLength(0);
+    }
+    
+    void writeTo(GatheringByteChannel channel) throws IOException {
+        
+        flush();
+        ByteBuffer[] srcs = buffers.toArray(new ByteBuffer[buffers.size()]);
+        int offset = 0;
+        while (offset < srcs.length) {
+            channel.write(srcs, offset, srcs.length - offset);
+            while (offset < srcs.length && !srcs[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
+}
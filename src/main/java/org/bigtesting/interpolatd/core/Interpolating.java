@@ -23,5 +23,19 @@
  */
 public interface Interpolating<T> {
 
-    List<Substitution> interpolate(String toInterpolate, T arg);
+    /**
+     * Finds the matches that start at or after from and before to, 
+     * exactly as a scan of the whole of toInterpolate would have found 
+     * them if it had resumed at from. A match may extend past to. The
+     * input is scanned in place, and must not change during the scan.
+     */
+    List<Match<T>> match(CharSequence toInterpolate, int from, int to);
+    
+    /**
+     * Returns whether looking for a match at any index, successfully or 
+     * not, never looks past the first whitespace at or after that index. 
+     * After an edit, a scan then only needs to resume at the whitespace 
+     * before the edit.
+     */
+    boolean stopsAtWhitespace();
 }
@@ -57,19 +57,29 @@ public EnclosureOpeningHandler<T> enclosedBy(String opening) {
         return enclosureOpeningHandler;
     }
     
-    public List<Substitution> interpolate(String toInterpolate, T arg) {
+    public boolean stopsAtWhitespace() {
         
-        List<Substitution> substitutions = new ArrayList<Substitution>();
+        if (prefixHandler != null) {
+            return prefixHandler.stopsAtWhitespace();
+        } else if (enclosureOpeningHandler != null) {
+            return enclosureOpeningHandler.getEnclosureClosingHandler().stopsAtWhitespace();
+        }
+        return true;
+    }
+    
+    public List<Match<T>> match(CharSequence toInterpolate, int from, int to) {
+        
+        List<Match<T>> matches = new ArrayList<Match<T>>();
         if (prefixHandler != null) {
             
-            substitutions.addAll(prefixHandler.interpolate(toInterpolate, arg));
+            matches.addAll(prefixHandler.match(toInterpolate, from, to));
             
         } else if (enclosureOpeningHandler != null) {
             
-            substitutions.addAll(enclosureOpeningHandler.getEnclosureClosingHandler()
-                                                   .interpolate(toInterpolate, arg));
+            matches.addAll(enclosureOpeningHandler.getEnclosureClosingHandler()
+                                                   .match(toInterpolate, from, to));
         }
         
-        return substitutions;
+        return matches;
     }
 }
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.bigtesting.interpolatd.LiveTemplate;
+
+/**
+ * Keeps the matches of each handler, and their values, across edits.
+ * <p>
+ * After an edit, each handler's scan is resumed where a scan of the whole
+ * template would have been unaffected by the edit: at the end of its last
+ * match before the edit, or later, at the whitespace before the edit, for
+ * handlers that stop at whitespace. Other handlers are scanned from the 
+ * start. Once past the edit, the scan is resynchronized as soon as it 
+ * resumes where the scan before the edit also did, that is, anywhere but
+ * inside one of the previous matches; all the matches from there on are 
+ * the previous ones, moved by the length of the edit. The matches are 
+ * therefore exactly those of a scan of the whole template.
+ * <p>
+ * Only the new matches are substituted. The matches are rendered in 
+ * clusters, runs of matches that overlap or touch, since how a match is 
+ * rendered depends only on the others in its cluster; the text between 
+ * clusters is literal. After an edit, only the clusters around the new 
+ * matches are rendered again, from the values kept, and no Substitutor
+ * is called. The template, the matches and the clusters are each kept 
+ * with a gap at the last edit, so an edit doesn't touch what is far from
+ * it; the result is assembled only when asked for.
+ *
+ * @author Luis Antunes
+ */
+public class LiveTemplateImpl<T> implements LiveTemplate<T> {
+
+    private final List<Interpolating<T>> handlers;
+    
+    private final T arg;
+    
+    private final Expansion<T> expansion;
+    
+    private final GapText text = new GapText();
+    
+    /* the matches of each handler, with their values */
+    private final List<SpanList<Found<T>>> scanned;
+    
+    private final SpanList<Cluster> clusters = new SpanList<Cluster>();
+    
+    private String template = "";
+    
+    private String result = "";
+    
+    public LiveTemplateImpl(List<Interpolating<T>> handlers, T arg, Expansion<T> expansion) {
+        
+        this.handlers = new ArrayList<Interpolating<T>>(handlers);
+        this.arg = arg;
+        this.expansion = expansion;
+        this.scanned = new ArrayList<SpanList<Found<T>>>();
+        for (int i = 0; i < handlers.size(); i++) {
+            scanned.add(new SpanList<Found<T>>());
+        }
+    }
+    
+    public String template() {
+        
+        if (template == null) {
+            template = text.toString();
+        }
+        return template;
+    }
+    
+    public String result() {
+        
+        if (result == null) {
+            result = assemble();
+        }
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        
+        return result();
+    }
+    
+    public void edit(int offset, int removed, String inserted) {
+        
+        if (inserted == null) {
+            throw new IllegalArgumentException("inserted cannot be null");
+        }
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IllegalArgumentException("edit out of bounds: " + offset + ", " + removed);
+        }
+        
+        text.replace(offset, removed, inserted);
+        template = null;
+        result = null;
+        
+        Edit edit = new Edit(offset, removed, inserted.length());
+        for (int h = 0; h < handlers.size(); h++) {
+            rescan(handlers.get(h), scanned.get(h), edit);
+        }
+        render(edit);
+    }
+    
+    /**
+     * Called with the matches a handler found, before they are substituted.
+     */
+    protected List<Match<T>> found(List<Match<T>> matches) {
+        
+        return matches;
+    }
+    
+    private void rescan(Interpolating<T> handler, SpanList<Found<T>> matches, Edit edit) {
+        
+        int offset = edit.offset;
+        int delta = edit.inserted - edit.removed;
+        int editEnd = offset + edit.inserted;
+        
+        /* keep the matches before the edit, and find where to resume */
+        int before = matches.endingAtOrAfter(offset);
+        int kept = 0;
+        int pos = 0;
+        if (handler.stopsAtWhitespace()) {
+            kept = before;
+            pos = kept > 0 ? matches.end(kept - 1) : 0;
+            for (int i = offset - 1; i >= pos; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    pos = i + 1;
+                    break;
+                }
+            }
+        }
+        
+        List<Match<T>> found = new ArrayList<Match<T>>();
+        int old = kept;
+        while (true) {
+            
+            int to;
+            if (pos < editEnd) {
+                to = editEnd;
+            } else {
+                
+                /* resynchronize unless the previous scan never resumed here */
+                int previousPos = pos - delta;
+                while (old < matches.size() && matches.end(old) <= previousPos) {
+                    old++;
+                }
+                if (old == matches.size() || matches.start(old) >= previousPos) {
+                    break;
+                }
+                to = matches.end(old) + delta;
+            }
+            
+            List<Match<T>> more = handler.match(text, pos, to);
+            found.addAll(more);
+            pos = more.isEmpty() ? to : Math.max(to, more.get(more.size() - 1).end());
+        }
+        
+        /* the matches found again where they were, up to the first that changed, are kept */
+        int same = 0;
+        while (same < found.size() && kept < before && 
+                matches.start(kept) == found.get(same).start() && 
+                matches.end(kept) == found.get(same).end()) {
+            same++;
+            kept++;
+        }
+        
+        List<Found<T>> rescanned = new ArrayList<Found<T>>();
+        int previous = kept;
+        for (Match<T> match : found(found.subList(same, found.size()))) {
+            
+            /* a match found again before the edit keeps its value */
+            while (previous < before && matches.start(previous) < match.start()) {
+                previous++;
+            }
+            String value;
+            if (previous < before && matches.start(previous) == match.start() &&
+                    matches.end(previous) == match.end()) {
+                value = matches.get(previous).value;
+            } else {
+                value = match.isEscape() ? null : match.substitute(arg);
+            }
+            rescanned.add(new Found<T>(match, value));
+            edit.include(match.start(), match.end());
+        }
+        for (int i = kept; i < old; i++) {
+            edit.include(edit.moved(matches.start(i)), edit.moved(matches.end(i)));
+        }
+        matches.replace(kept, old, rescanned, delta);
+    }
+    
+    /*
+     * Renders the clusters in the window around the edit again. The window
+     * is widened until the clusters in it are whole, and its bounds are 
+     * clean: no match crosses them, and none both ends and starts there.
+     */
+    private void render(Edit edit) {
+        
+        int delta = edit.inserted - edit.removed;
+        int from, to;
+        while (true) {
+            
+            edit.lo = cleanBefore(edit.lo);
+            edit.hi = cleanAfter(edit.hi);
+            
+            /* the window in the offsets the clusters still have */
+            int oldLo = edit.lo;
+            int oldHi = edit.hi - delta;
+            from = clusters.endingAtOrAfter(oldLo + 1);
+            to = from;
+            while (to < clusters.size() && clusters.start(to) < oldHi) {
+                to++;
+            }
+            
+            int lo = edit.lo, hi = edit.hi;
+            if (to > from) {
+                edit.include(edit.moved(clusters.start(from)), edit.moved(clusters.end(to - 1)));
+            }
+            if (edit.lo == lo && edit.hi == hi) break;
+        }
+        
+        List<Located<T>> window = new ArrayList<Located<T>>();
+        for (SpanList<Found<T>> matches : scanned) {
+            for (int i = matches.endingAtOrAfter(edit.lo + 1); 
+                    i < matches.size() && matches.start(i) < edit.hi; i++) {
+                window.add(new Located<T>(matches.start(i), matches.end(i), matches.get(i)));
+            }
+        }
+        Collections.sort(window, new Comparator<Located<T>>() {
+            public int compare(Located<T> a, Located<T> b) {
+                return Integer.compare(a.start, b.start);
+            }
+        });
+        
+        List<Cluster> rendered = new ArrayList<Cluster>();
+        int first = 0;
+        int end = 0;
+        for (int i = 0; i < window.size(); i++) {
+            if (i > first && window.get(i).start > end) {
+                rendered.add(render(window.subList(first, i), end));
+                first = i;
+            }
+            end = i == first ? window.get(i).end : Math.max(end, window.get(i).end);
+        }
+        if (first < window.size()) {
+            rendered.add(render(window.subList(first, window.size()), end));
+        }
+        clusters.replace(from, to, rendered, delta);
+    }
+    
+    private Cluster render(List<Located<T>> cluster, int end) {
+        
+        int start = cluster.get(0).start;
+        List<Match<T>> matches = new ArrayList<Match<T>>(cluster.size());
+        String[] values = new String[cluster.size()];
+        for (int i = 0; i < values.length; i++) {
+            Located<T> located = cluster.get(i);
+            Match<T> match = located.found.match;
+            matches.add(match.movedBy(located.start - match.start() - start));
+            values[i] = located.found.value;
+        }
+        
+        /* the matches are in order already, so the values stay aligned with them */
+        CompiledTemplateImpl<T> compiled = 
+            new CompiledTemplateImpl<T>(text.substring(start, end), matches, expansion);
+        StringBuilder sb = new StringBuilder(end - start);
+        compiled.interpolate(arg, sb, values);
+        return new Cluster(start, end, sb.toString());
+    }
+    
+    /*
+     * Moves back from p until p is clean.
+     */
+    private int cleanBefore(int p) {
+        
+        while (true) {
+            int crossing = p, ending = p;
+            boolean ends = false, starts = false;
+            for (SpanList<Found<T>> matches : scanned) {
+                int i = matches.endingAtOrAfter(p);
+                if (i == matches.size()) continue;
+                int start = matches.start(i), end = matches.end(i);
+                if (start < p && end > p) {
+                    crossing = Math.min(crossing, start);
+                } else if (end == p && start < p) {
+                    ends = true;
+                    ending = Math.min(ending, start);
+                    starts |= i + 1 < matches.size() && matches.start(i + 1) == p;
+                } else if (start == p) {
+                    starts = true;
+                }
+            }
+            if (crossing < p) {
+                p = crossing;
+            } else if (ends && starts) {
+                p = ending;
+            } else {
+                return p;
+            }
+        }
+    }
+    
+    /*
+     * Moves forward from p until p is clean.
+     */
+    private int cleanAfter(int p) {
+        
+        while (true) {
+            int crossing = p, starting = p;
+            boolean ends = false, starts = false;
+            for (SpanList<Found<T>> matches : scanned) {
+                int i = matches.endingAtOrAfter(p);
+                if (i == matches.size()) continue;
+                int start = matches.start(i), end = matches.end(i);
+                if (start < p && end > p) {
+                    crossing = Math.max(crossing, end);
+                } else if (end == p && start < p) {
+                    ends = true;
+                    if (i + 1 < matches.size() && matches.start(i + 1) == p) {
+                        starts = true;
+                        starting = Math.max(starting, matches.end(i + 1));
+                    }
+                } else if (start == p) {
+                    starts = true;
+                    starting = Math.max(starting, end);
+                }
+            }
+            if (crossing > p) {
+                p = crossing;
+            } else if (ends && starts) {
+                p = starting;
+            } else {
+                return p;
+            }
+        }
+    }
+    
+    private String assemble() {
+        
+        StringBuilder sb = new StringBuilder(text.length());
+        int pos = 0;
+        for (int i = 0; i < clusters.size(); i++) {
+            text.appendTo(sb, pos, clusters.start(i));
+            sb.append(clusters.get(i).result);
+            pos = clusters.end(i);
+        }
+        text.appendTo(sb, pos, text.length());
+        return sb.toString();
+    }
+    
+    /*
+     * An edit, and the window of the template, in the offsets after the 
+     * edit, whose rendering it changes.
+     */
+    private static class Edit {
+        
+        private final int offset;
+        private final int removed;
+        private final int inserted;
+        private int lo;
+        private int hi;
+        
+        Edit(int offset, int removed, int inserted) {
+            this.offset = offset;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.lo = offset;
+            this.hi = offset + inserted;
+        }
+        
+        void include(int start, int end) {
+            lo = Math.min(lo, start);
+            hi = Math.max(hi, end);
+        }
+        
+        /* where an offset from before the edit is after it; the window holds the edit itself */
+        int moved(int pos) {
+            if (pos <= offset) return pos;
+            if (pos >= offset + removed) return pos + inserted - removed;
+            return offset;
+        }
+    }
+    
+    private static class Found<T> extends SpanList.Span {
+        
+        private final Match<T> match;
+        private final String value;
+        
+        Found(Match<T> match, String value) {
+            super(match.start(), match.end());
+            this.match = match;
+            this.value = value;
+        }
+    }
+    
+    private static class Located<T> {
+        
+        private final int start;
+        private final int end;
+        private final Found<T> found;
+        
+        Located(int start, int end, Found<T> found) {
+            this.start = start;
+            this.end = end;
+            this.found = found;
+        }
+    }
+    
+    private static class Cluster extends SpanList.Span {
+        
+        private final String result;
+        
+        Cluster(int start, int end, String result) {
+            super(start, end);
+            this.result = result;
+        }
+    }
+}
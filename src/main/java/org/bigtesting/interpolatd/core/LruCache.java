@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bigtesting.interpolatd.CacheStats;
+
+/**
+ * A thread-safe cache that evicts its least recently used entries once
+ * either the number of entries or their total weight exceeds a bound,
+ * and optionally expires entries a fixed time after they were put.
+ * <p>
+ * Hits take no lock: the entries are read from a ConcurrentHashMap, and a
+ * hit only marks its entry as referenced. Recency is approximated when 
+ * entries are evicted, under the lock that all changes to the cache take:
+ * the eldest entry is evicted unless it was referenced since it was last 
+ * looked at, in which case it is given a second chance at the back of the
+ * queue. The entry being put is never the one evicted. The lock is never
+ * held while a value is being computed.
+ *
+ * @author Luis Antunes
+ */
+public class LruCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<K, Entry<V>> map = new ConcurrentHashMap<K, Entry<V>>();
+
+    /* the same entries, in eviction order; guarded by this */
+    private final LinkedHashMap<K, Entry<V>> queue = new LinkedHashMap<K, Entry<V>>();
+
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(int maxEntries, long maxWeight) {
+        this(maxEntries, maxWeight, 0);
+    }
+
+    /**
+     * A ttlNanos of 0 means entries never expire.
+     */
+    public LruCache(int maxEntries, long maxWeight, long ttlNanos) {
+
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be positive");
+        }
+        if (ttlNanos < 0) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttlNanos;
+    }
+
+    public V get(K key) {
+
+        Entry<V> entry = map.get(key);
+        if (entry != null && isExpired(entry)) {
+            synchronized (this) {
+                if (map.get(key) == entry) {
+                    remove(key, entry);
+                    evictions.incrementAndGet();
+                }
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        /* only written when it changes, to keep hits from sharing a cache line */
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(K key, V value, long weight) {
+
+        /* an entry that could never fit is not worth evicting everything for */
+        if (weight > maxWeight) return;
+
+        synchronized (this) {
+
+            insert(key, value, weight);
+        }
+    }
+
+    /**
+     * Puts the value only if there is no live entry for the key yet, and
+     * returns the value of the existing entry otherwise, or null if the 
+     * value was put.
+     */
+    public V putIfAbsent(K key, V value, long weight) {
+
+        synchronized (this) {
+
+            Entry<V> existing = map.get(key);
+            if (existing != null && !isExpired(existing)) {
+                return existing.value;
+            }
+            if (weight <= maxWeight) {
+                insert(key, value, weight);
+            }
+            return null;
+        }
+    }
+
+    public synchronized void remove(K key) {
+
+        Entry<V> entry = map.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    public synchronized void remove(K key, V value) {
+
+        Entry<V> entry = map.get(key);
+        if (entry != null && entry.value == value) {
+            remove(key, entry);
+        }
+    }
+
+    public synchronized void removeMatching(KeyPredicate<K> predicate) {
+
+        Iterator<Map.Entry<K, Entry<V>>> entries = queue.entrySet().iterator();
+        while (entries.hasNext()) {
+
+            Map.Entry<K, Entry<V>> entry = entries.next();
+            if (predicate.matches(entry.getKey())) {
+                entries.remove();
+                map.remove(entry.getKey());
+                weight -= entry.getValue().weight;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+
+        map.clear();
+        queue.clear();
+        weight = 0;
+    }
+
+    public int size() {
+
+        return map.size();
+    }
+
+    public CacheStats stats() {
+
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size());
+    }
+
+    private void insert(K key, V value, long weight) {
+
+        long expiresAt = System.nanoTime() + ttlNanos;
+        Entry<V> entry = new Entry<V>(value, weight, expiresAt);
+        Entry<V> previous = map.put(key, entry);
+        if (previous != null) {
+            queue.remove(key);
+            this.weight -= previous.weight;
+        }
+        queue.put(key, entry);
+        this.weight += weight;
+
+        while (queue.size() > maxEntries || this.weight > maxWeight) {
+
+            Map.Entry<K, Entry<V>> eldest = queue.entrySet().iterator().next();
+            K eldestKey = eldest.getKey();
+            Entry<V> candidate = eldest.getValue();
+            queue.remove(eldestKey);
+            /* 
+             * the entry being put is never evicted; once every other entry
+             * has had its second chance, the eldest of them is evicted
+             */
+            if (candidate == entry) {
+                queue.put(eldestKey, candidate);
+                continue;
+            }
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                queue.put(eldestKey, candidate);
+                continue;
+            }
+            map.remove(eldestKey);
+            this.weight -= candidate.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+
+        return ttlNanos > 0 && System.nanoTime() - entry.expiresAt >= 0;
+    }
+
+    private void remove(K key, Entry<V> entry) {
+
+        map.remove(key);
+        queue.remove(key);
+        weight -= entry.weight;
+    }
+
+    public interface KeyPredicate<K> {
+
+        boolean matches(K key);
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        private volatile boolean referenced;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
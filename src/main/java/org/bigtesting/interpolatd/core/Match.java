@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+
+/**
+ * A pattern found while scanning a template. Unlike a substitution, a
+ * match does not carry a value; the value is obtained from the handler
+ * that found the match only when the template is rendered.
+ *
+ * @author Luis Antunes
+ */
+public class Match<T> implements Comparable<Match<T>> {
+
+    private final SubstitutionHandlerImpl<T> handler;
+    private final String found;
+    private final String captured;
+    private final int start;
+    private final int end;
+    private final CompiledTemplateImpl<T> fallback;
+
+    /* 
+     * prepared the first time the match is rendered, so that matches that
+     * are escaped or never rendered, and raw matches a fallback is yet to 
+     * be split from, are not prepared; racing threads prepare alike
+     */
+    private volatile SubstitutionHandlerImpl.Prepared<T> prepared;
+
+    public Match(String found, int start, int end) {
+        this(null, found, null, start, end);
+    }
+
+    public Match(SubstitutionHandlerImpl<T> handler, String found, String captured,
+            int start, int end) {
+        this(handler, found, captured, start, end, null, null);
+    }
+
+    private Match(SubstitutionHandlerImpl<T> handler, String found, String captured,
+            int start, int end, CompiledTemplateImpl<T> fallback, 
+            SubstitutionHandlerImpl.Prepared<T> prepared) {
+
+        this.handler = handler;
+        this.found = found;
+        this.captured = captured;
+        this.start = start;
+        this.end = end;
+        this.fallback = fallback;
+        this.prepared = prepared;
+    }
+
+    /**
+     * Returns a copy of this match with the given captured value, that 
+     * renders the given template whenever it has no value.
+     */
+    public Match<T> withFallback(String captured, CompiledTemplateImpl<T> fallback) {
+        return new Match<T>(handler, found, captured, start, end, fallback, null);
+    }
+
+    /**
+     * Returns a copy of this match, moved by the given number of characters.
+     */
+    public Match<T> movedBy(int delta) {
+        return new Match<T>(handler, found, captured, start + delta, end + delta, fallback, prepared);
+    }
+
+    public String substitute(T arg) {
+        return handler.substitute(captured, prepared(), arg);
+    }
+
+    public boolean isWriting() {
+        return handler != null && handler.isWriting();
+    }
+
+    public boolean write(T arg, Appendable out) throws IOException {
+        return handler.write(captured, prepared(), arg, out);
+    }
+
+    private SubstitutionHandlerImpl.Prepared<T> prepared() {
+        SubstitutionHandlerImpl.Prepared<T> current = prepared;
+        if (current == null || !handler.isPreparedBy(current)) {
+            current = handler.prepare(captured);
+            prepared = current;
+        }
+        return current;
+    }
+
+    public SubstitutionHandlerImpl<T> handler() {
+        return handler;
+    }
+
+    public String found() {
+        return found;
+    }
+
+    public String captured() {
+        return captured;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public CompiledTemplateImpl<T> fallback() {
+        return fallback;
+    }
+
+    public boolean isEscape() {
+        return handler == null;
+    }
+
+    public boolean isAfter(Match<T> that) {
+        return this.start() == that.end();
+    }
+
+    public int compareTo(Match<T> that) {
+        return Integer.compare(this.start, that.start);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.bigtesting.interpolatd.ResultConsumer;
+
+/**
+ * Interpolates one compiled template for a list of arguments by splitting
+ * the list into chunks that are rendered on an Executor. Every chunk has
+ * its own buffer; the only state the chunks share is the immutable
+ * compiled template.
+ *
+ * @author Luis Antunes
+ */
+public class ParallelBatch<T> {
+
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    private final CompiledTemplateImpl<T> template;
+
+    private final List<T> args;
+
+    private final Executor executor;
+
+    public ParallelBatch(CompiledTemplateImpl<T> template, List<T> args, Executor executor) {
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        this.template = template;
+        this.args = args;
+        this.executor = executor;
+    }
+
+    public List<String> interpolate() {
+
+        final List<String> results = new ArrayList<String>(args.size());
+        run(true, new ResultConsumer<T>() {
+            public void accept(T arg, CharSequence result) {
+                results.add(result.toString());
+            }
+        });
+        return results;
+    }
+
+    /**
+     * When ordered, results are handed to the consumer in argument order,
+     * on the calling thread, as soon as the chunks they belong to are done.
+     * Otherwise, each worker hands its results to the consumer as it
+     * produces them, so the consumer must be thread-safe.
+     */
+    public void run(boolean ordered, ResultConsumer<T> consumer) {
+
+        List<FutureTask<List<String>>> chunks = new ArrayList<FutureTask<List<String>>>();
+        int chunkCount = Math.min(args.size(),
+                Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR);
+        for (int i = 0; i < chunkCount; i++) {
+
+            int from = (int)((long)args.size() * i / chunkCount);
+            int to = (int)((long)args.size() * (i + 1) / chunkCount);
+            FutureTask<List<String>> chunk = new FutureTask<List<String>>(
+                    ordered ? collect(from, to) : deliver(from, to, consumer));
+            chunks.add(chunk);
+            executor.execute(chunk);
+        }
+
+        int offset = 0;
+        for (FutureTask<List<String>> chunk : chunks) {
+
+            List<String> results = Tasks.await(chunk, chunks);
+            if (ordered) {
+                for (String result : results) {
+                    consumer.accept(args.get(offset++), result);
+                }
+            }
+        }
+    }
+
+    private Callable<List<String>> collect(final int from, final int to) {
+
+        return new Callable<List<String>>() {
+            public List<String> call() {
+
+                List<String> results = new ArrayList<String>(to - from);
+                StringBuilder sb = new StringBuilder();
+                for (int i = from; i < to; i++) {
+                    sb.setLength(0);
+                    template.interpolate(args.get(i), sb);
+                    results.add(sb.toString());
+                }
+                return results;
+            }
+        };
+    }
+
+    private Callable<List<String>> deliver(final int from, final int to,
+            final ResultConsumer<T> consumer) {
+
+        return new Callable<List<String>>() {
+            public List<String> call() {
+
+                StringBuilder sb = new StringBuilder();
+                for (int i = from; i < to; i++) {
+                    T arg = args.get(i);
+                    sb.setLength(0);
+                    template.interpolate(arg, sb);
+                    consumer.accept(arg, sb);
+                }
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Scans a large input for the matches of every handler by splitting it
+ * into chunks that are scanned in parallel.
+ * <p>
+ * Each chunk is scanned as if a scan of the whole input had resumed at
+ * the start of the chunk. That holds unless a match found in a previous
+ * chunk extends past the start of the chunk; the chunk is then rescanned
+ * from the end of that match, which is what a sequential scan would have
+ * done. The matches are therefore exactly those of a sequential scan.
+ * Chunks are split at whitespace where possible, since the default
+ * character classes never match across whitespace.
+ *
+ * @author Luis Antunes
+ */
+public class ParallelScan<T> {
+
+    private static final int MIN_CHUNK_LENGTH = 1 << 16;
+
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    private static final int MAX_SPLIT_SEARCH = 256;
+
+    private final List<Interpolating<T>> handlers;
+
+    private final Executor executor;
+
+    public ParallelScan(List<Interpolating<T>> handlers, Executor executor) {
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        this.handlers = handlers;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the matches of all handlers, sorted as a sequential scan
+     * would have sorted them.
+     */
+    public List<Match<T>> scan(final CharSequence input) {
+
+        final int[] bounds = split(input);
+        int chunkCount = bounds.length - 1;
+
+        /* find the matches of every handler in every chunk */
+        List<FutureTask<List<Match<T>>>> scans = new ArrayList<FutureTask<List<Match<T>>>>();
+        for (final Interpolating<T> handler : handlers) {
+            for (int c = 0; c < chunkCount; c++) {
+
+                final int from = bounds[c];
+                final int to = bounds[c + 1];
+                scans.add(submit(new Callable<List<Match<T>>>() {
+                    public List<Match<T>> call() {
+                        return handler.match(input, from, to);
+                    }
+                }));
+            }
+        }
+
+        /* repair the chunks into which a match from a previous chunk extends */
+        final List<List<List<Match<T>>>> byHandler = new ArrayList<List<List<Match<T>>>>();
+        for (int h = 0; h < handlers.size(); h++) {
+
+            List<List<Match<T>>> chunks = new ArrayList<List<Match<T>>>();
+            int lastEnd = 0;
+            for (int c = 0; c < chunkCount; c++) {
+
+                List<Match<T>> matches = Tasks.await(scans.get(h * chunkCount + c), scans);
+                if (lastEnd > bounds[c]) {
+                    matches = lastEnd < bounds[c + 1] ?
+                            handlers.get(h).match(input, lastEnd, bounds[c + 1]) :
+                            Collections.<Match<T>>emptyList();
+                }
+                if (!matches.isEmpty()) {
+                    lastEnd = matches.get(matches.size() - 1).end();
+                }
+                chunks.add(matches);
+            }
+            byHandler.add(chunks);
+        }
+
+        /* sort each chunk, in handler order for matches starting at the same index */
+        List<FutureTask<List<Match<T>>>> sorts = new ArrayList<FutureTask<List<Match<T>>>>();
+        for (int c = 0; c < chunkCount; c++) {
+
+            final int chunk = c;
+            sorts.add(submit(new Callable<List<Match<T>>>() {
+                public List<Match<T>> call() {
+
+                    List<Match<T>> matches = new ArrayList<Match<T>>();
+                    for (List<List<Match<T>>> chunks : byHandler) {
+                        matches.addAll(chunks.get(chunk));
+                    }
+                    Collections.sort(matches);
+                    return matches;
+                }
+            }));
+        }
+
+        List<Match<T>> matches = new ArrayList<Match<T>>();
+        for (FutureTask<List<Match<T>>> sort : sorts) {
+            matches.addAll(Tasks.await(sort, sorts));
+        }
+        return matches;
+    }
+
+    private FutureTask<List<Match<T>>> submit(Callable<List<Match<T>>> callable) {
+
+        FutureTask<List<Match<T>>> task = new FutureTask<List<Match<T>>>(callable);
+        executor.execute(task);
+        return task;
+    }
+
+    private int[] split(CharSequence input) {
+
+        int length = input.length();
+        int chunkCount = Math.max(1, Math.min(length / MIN_CHUNK_LENGTH,
+                Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR));
+
+        int[] bounds = new int[chunkCount + 1];
+        for (int c = 1; c < chunkCount; c++) {
+
+            int nominal = (int)((long)length * c / chunkCount);
+            int split = nominal;
+            while (split < length && split - nominal < MAX_SPLIT_SEARCH &&
+                    !Character.isWhitespace(input.charAt(split))) {
+                split++;
+            }
+            if (split == length || split - nominal == MAX_SPLIT_SEARCH) {
+                split = nominal;
+            }
+            bounds[c] = Math.max(bounds[c - 1], split);
+        }
+        bounds[chunkCount] = length;
+        return bounds;
+    }
+}
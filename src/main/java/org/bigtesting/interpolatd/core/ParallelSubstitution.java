@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Interpolates a compiled template for one argument, substituting every
+ * placeholder as a separate task, so that Substitutors that block are
+ * waited on concurrently rather than one after the other.
+ * <p>
+ * Placeholders that every render leaves escaped are not substituted. 
+ * Since the values are needed before it is known which placeholders end
+ * up overlapped, all others are, including overlapped ones that a 
+ * sequential interpolation would have skipped.
+ *
+ * @author Luis Antunes
+ */
+public class ParallelSubstitution<T> {
+
+    private final CompiledTemplateImpl<T> template;
+
+    private final BoundedExecutor executor;
+
+    public ParallelSubstitution(CompiledTemplateImpl<T> template, BoundedExecutor executor) {
+
+        this.template = template;
+        this.executor = executor;
+    }
+
+    public String interpolate(T arg) throws InterruptedException {
+
+        List<Match<T>> matches = template.matches();
+        List<Integer> indexes = new ArrayList<Integer>();
+        List<FutureTask<String>> tasks = new ArrayList<FutureTask<String>>();
+        try {
+            for (int i = 0; i < matches.size(); i++) {
+
+                Match<T> match = matches.get(i);
+                if (match.isEscape() || template.isEscaped(i)) continue;
+
+                tasks.add(executor.submit(substitution(match, arg)));
+                indexes.add(i);
+            }
+        } catch (InterruptedException e) {
+            Tasks.cancel(tasks);
+            throw e;
+        } catch (RejectedExecutionException e) {
+            Tasks.cancel(tasks);
+            throw e;
+        }
+
+        String[] values = new String[matches.size()];
+        for (int t = 0; t < tasks.size(); t++) {
+            values[indexes.get(t)] = Tasks.await(tasks.get(t), tasks);
+        }
+
+        StringBuilder sb = new StringBuilder(template.template().length());
+        template.interpolate(arg, sb, values);
+        return sb.toString();
+    }
+
+    private Callable<String> substitution(final Match<T> match, final T arg) {
+
+        return new Callable<String>() {
+            public String call() {
+                return match.substitute(arg);
+            }
+        };
+    }
+}
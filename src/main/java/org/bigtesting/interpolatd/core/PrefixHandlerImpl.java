@@ -26,23 +26,35 @@
 public class PrefixHandlerImpl<T> extends SubstitutionHandlerImpl<T>
     implements PrefixHandler<T> {
 
-    private final Pattern pattern;
+    private final SharedPattern pattern;
     
     private final String prefix;
     
+    private final boolean stopsAtWhitespace;
+    
     public PrefixHandlerImpl(String prefix, String characterClass) {
         
         this.prefix = prefix;
+        this.stopsAtWhitespace = characterClass == null && !hasWhitespace(prefix);
         
         String quotedPrefix = Pattern.quote(prefix);
         if (characterClass == null) {
             characterClass = "[^" + quotedPrefix + "\\s]+";
         }
-        this.pattern = Pattern.compile("(" + quotedPrefix + characterClass + ")");
+        this.pattern = SharedPatterns.intern("(" + quotedPrefix + characterClass + ")");
+    }
+    
+    /**
+     * Only the default character class is known to exclude whitespace.
+     */
+    @Override
+    public boolean stopsAtWhitespace() {
+        
+        return stopsAtWhitespace;
     }
     
     @Override
-    protected Pattern getPattern() {
+    protected SharedPattern getPattern() {
         
         return pattern;
     }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+
+import org.bigtesting.interpolatd.WritingSubstitutor;
+
+/**
+ * A WritingSubstitutor that works out what it needs from a captured 
+ * string once, the first time a match is rendered, instead of each time.
+ * What it prepares is kept on the match. Matches that are escaped, or 
+ * never rendered, are never prepared.
+ * 
+ * @author Luis Antunes
+ */
+public interface PreparingSubstitutor<T> extends WritingSubstitutor<T> {
+
+    /**
+     * Called before a match is first rendered, with its captured string,
+     * without any fallback; may throw an IllegalArgumentException, which
+     * fails the render.
+     */
+    Object prepare(String captured);
+    
+    boolean write(Object prepared, T arg, Appendable out) throws IOException;
+}
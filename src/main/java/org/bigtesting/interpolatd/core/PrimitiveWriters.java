@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+
+import org.bigtesting.interpolatd.DoubleSubstitutor;
+import org.bigtesting.interpolatd.IntSubstitutor;
+import org.bigtesting.interpolatd.LongSubstitutor;
+import org.bigtesting.interpolatd.WritingSubstitutor;
+
+/**
+ * Adapts the primitive-valued Substitutors to WritingSubstitutors. When
+ * the output is a StringBuilder, which is the case whenever the result is
+ * a String, the digits are written straight into it; no String or boxed
+ * value is created. Other outputs receive the value as a String.
+ * 
+ * @author Luis Antunes
+ */
+public final class PrimitiveWriters {
+
+    private PrimitiveWriters() {}
+    
+    public static <T> WritingSubstitutor<T> ofInt(final IntSubstitutor<T> substitutor) {
+        
+        return new WritingSubstitutor<T>() {
+            public boolean write(String captured, T arg, Appendable out) throws IOException {
+                int value = substitutor.substitute(captured, arg);
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder)out).append(value);
+                } else {
+                    out.append(String.valueOf(value));
+                }
+                return true;
+            }
+        };
+    }
+    
+    public static <T> WritingSubstitutor<T> ofLong(final LongSubstitutor<T> substitutor) {
+        
+        return new WritingSubstitutor<T>() {
+            public boolean write(String captured, T arg, Appendable out) throws IOException {
+                long value = substitutor.substitute(captured, arg);
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder)out).append(value);
+                } else {
+                    out.append(String.valueOf(value));
+                }
+                return true;
+            }
+        };
+    }
+    
+    public static <T> WritingSubstitutor<T> ofDouble(final DoubleSubstitutor<T> substitutor) {
+        
+        return new WritingSubstitutor<T>() {
+            public boolean write(String captured, T arg, Appendable out) throws IOException {
+                double value = substitutor.substitute(captured, arg);
+                if (out instanceof StringBuilder) {
+                    ((StringBuilder)out).append(value);
+                } else {
+                    out.append(String.valueOf(value));
+                }
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.regex.Matcher;
+
+/**
+ * Finds the matches of a SharedPattern that start in a range of the input,
+ * exactly as a scan of the whole input resumed at the start of the range
+ * would find them. The whole match is group 1.
+ * <p>
+ * When the range ends before the input does, the pattern is looked for 
+ * in a lookahead, which sees past the range, so that only the starts in
+ * the range are tried: a pattern that is rare in a large input is not 
+ * looked for all the way to its end, only to find a match past the range.
+ * 
+ * @author Luis Antunes
+ */
+class RangeMatcher {
+
+    private final Matcher matcher;
+    
+    private final int to;
+    
+    private final boolean bounded;
+    
+    private int pos;
+    
+    RangeMatcher(SharedPattern pattern, CharSequence input, int from, int to) {
+        
+        this.bounded = to < input.length();
+        this.matcher = (bounded ? pattern.lookahead() : pattern.get()).matcher(input);
+        this.matcher.useTransparentBounds(true).useAnchoringBounds(false);
+        this.to = to;
+        this.pos = from;
+        if (!bounded) {
+            matcher.region(from, input.length());
+        }
+    }
+    
+    boolean find() {
+        
+        if (bounded) {
+            if (pos >= to) return false;
+            matcher.region(pos, to);
+        }
+        if (!matcher.find() || matcher.start() >= to) return false;
+        if (bounded) {
+            pos = matcher.end(1);
+        }
+        return true;
+    }
+    
+    int start() {
+        
+        return matcher.start(1);
+    }
+    
+    int end() {
+        
+        return matcher.end(1);
+    }
+    
+    String group(int group) {
+        
+        return matcher.group(group);
+    }
+}
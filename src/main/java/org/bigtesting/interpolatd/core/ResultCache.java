@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bigtesting.interpolatd.CacheStats;
+import org.bigtesting.interpolatd.KeyExtractor;
+
+/**
+ * Caches interpolation results by template and argument key.
+ * <p>
+ * Every invalidation starts a new generation. A result is only put if no
+ * invalidation happened since the generation read before it was rendered,
+ * so that a render still running when the cache is invalidated cannot 
+ * put its stale result back.
+ * 
+ * @author Luis Antunes
+ */
+public class ResultCache<T> {
+
+    private final KeyExtractor<T> keyExtractor;
+    
+    private final LruCache<Key, String> cache;
+    
+    private final AtomicLong generation = new AtomicLong();
+    
+    public ResultCache(KeyExtractor<T> keyExtractor, int maxResults, long ttlNanos) {
+        
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("keyExtractor cannot be null");
+        }
+        this.keyExtractor = keyExtractor;
+        this.cache = new LruCache<Key, String>(maxResults, Long.MAX_VALUE, ttlNanos);
+    }
+    
+    public Object keyFor(T arg) {
+        
+        return keyExtractor.keyFor(arg);
+    }
+    
+    public String get(String template, Object argKey) {
+        
+        return cache.get(new Key(template, argKey));
+    }
+    
+    /**
+     * Returns the current generation, to be read before rendering a result.
+     */
+    public long generation() {
+        
+        return generation.get();
+    }
+    
+    /**
+     * Puts a result rendered in the given generation, unless the cache has
+     * been invalidated since.
+     */
+    public void put(String template, Object argKey, String result, long renderedIn) {
+        
+        if (generation.get() != renderedIn) return;
+        
+        Key key = new Key(template, argKey);
+        cache.put(key, result, 1);
+        
+        /* an invalidation may have come between the check and the put */
+        if (generation.get() != renderedIn) {
+            cache.remove(key, result);
+        }
+    }
+    
+    public void invalidate() {
+        
+        generation.incrementAndGet();
+        cache.clear();
+    }
+    
+    public void invalidate(final Object argKey) {
+        
+        generation.incrementAndGet();
+        cache.removeMatching(new LruCache.KeyPredicate<Key>() {
+            public boolean matches(Key key) {
+                return key.argKey.equals(argKey);
+            }
+        });
+    }
+    
+    public void invalidate(String template, Object argKey) {
+        
+        generation.incrementAndGet();
+        cache.remove(new Key(template, argKey));
+    }
+    
+    public CacheStats stats() {
+        
+        return cache.stats();
+    }
+    
+    private static class Key {
+        
+        private final String template;
+        private final Object argKey;
+        
+        Key(String template, Object argKey) {
+            this.template = template;
+            this.argKey = argKey;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key)o;
+            return template.equals(that.template) && argKey.equals(that.argKey);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * template.hashCode() + argKey.hashCode();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bigtesting.interpolatd.SectionProvider;
+
+/**
+ * Finds sections, such as {{#rows}}...{{/rows}}, and renders the body of
+ * a section once for each of the rows its provider returns, straight into
+ * the output. The body is compiled the first time the section is rendered,
+ * kept on the match, and rendered for each row with the row as the 
+ * argument.
+ * <p>
+ * Sections are found in a single pass, without a pattern: the end tags
+ * are read once, as far into the input as the openings need, and kept by
+ * name, so an opening that is never closed doesn't cost a search to the
+ * end of the input.
+ * 
+ * @author Luis Antunes
+ */
+public class SectionHandlerImpl<T> extends SubstitutionHandlerImpl<T> {
+
+    private final String opening;
+    
+    private final String ending;
+    
+    private final String closing;
+    
+    public SectionHandlerImpl(String opening, String ending, final String closing, 
+            final SectionProvider<T> provider, final TemplateCompiler<T> compiler) {
+        
+        if (provider == null) {
+            throw new IllegalArgumentException("provider cannot be null");
+        }
+        
+        this.opening = opening;
+        this.ending = ending;
+        this.closing = closing;
+        
+        final int openingLength = opening.length();
+        final int bodyOffset = closing.length();
+        final int endLength = ending.length() + closing.length();
+        handleWith(new PreparingSubstitutor<T>() {
+            
+            public Object prepare(String found) {
+                
+                int nameEnd = found.indexOf(closing, openingLength + 1);
+                String name = found.substring(openingLength, nameEnd);
+                String body = found.substring(nameEnd + bodyOffset, 
+                        found.length() - endLength - name.length());
+                return new Section<T>(name, compiler.compile(body));
+            }
+            
+            public boolean write(String found, T arg, Appendable out) throws IOException {
+                
+                return write(prepare(found), arg, out);
+            }
+            
+            @SuppressWarnings("unchecked")
+            public boolean write(Object prepared, T arg, Appendable out) throws IOException {
+                
+                Section<T> section = (Section<T>)prepared;
+                Iterable<T> rows = provider.rows(section.name, arg);
+                if (rows == null) return false;
+                
+                for (T row : rows) {
+                    section.body.interpolate(row, out);
+                }
+                return true;
+            }
+        });
+    }
+    
+    /*
+     * Finds what the pattern (opening)(\S+?)(closing)[\s\S]*?(ending)\2(closing)
+     * would: the name is the shortest one followed by the closing, and 
+     * the section ends at the first end tag with that name.
+     */
+    @Override
+    public List<Match<T>> match(CharSequence toInterpolate, int from, int to) {
+        
+        List<Match<T>> matches = new ArrayList<Match<T>>();
+        if (substitutor == null && writingSubstitutor == null) return matches;
+        
+        Tags openings = new Tags(toInterpolate, opening, closing);
+        Tags endings = new Tags(toInterpolate, ending, closing);
+        Map<String, ArrayDeque<Integer>> ends = new HashMap<String, ArrayDeque<Integer>>();
+        
+        int pos = from;
+        while (pos < to) {
+            
+            int nameEnd = openings.nameEnd(pos);
+            if (nameEnd < 0) {
+                pos++;
+                continue;
+            }
+            String name = toInterpolate.subSequence(pos + opening.length(), nameEnd).toString();
+            int end = endings.next(name, nameEnd + closing.length(), ends);
+            if (end < 0) {
+                pos++;
+                continue;
+            }
+            end += ending.length() + name.length() + closing.length();
+            String found = toInterpolate.subSequence(pos, end).toString();
+            matches.add(new Match<T>(this, found, getCaptured(found), pos, end));
+            pos = end;
+        }
+        return matches;
+    }
+    
+    /* sections are found by match(), not by a pattern */
+    @Override
+    protected SharedPattern getPattern() {
+        
+        return null;
+    }
+    
+    @Override
+    protected String getCaptured(String found) {
+        
+        return found;
+    }
+    
+    /*
+     * Reads the tags that start with a given string, such as the openings 
+     * or the end tags, at positions that only ever move forward, so that 
+     * the next closing and the next whitespace are each looked for once 
+     * for the whole input.
+     */
+    private static class Tags {
+        
+        private final CharSequence input;
+        private final String start;
+        private final String closing;
+        
+        private int closingAt = -1;
+        private int spaceAt = -1;
+        
+        /* how far the end tags have been read */
+        private int read;
+        
+        Tags(CharSequence input, String start, String closing) {
+            this.input = input;
+            this.start = start;
+            this.closing = closing;
+        }
+        
+        /*
+         * Returns where the name of a tag at pos ends, at its closing, or -1 
+         * if there is no tag at pos.
+         */
+        int nameEnd(int pos) {
+            
+            if (!startsWith(input, start, pos)) return -1;
+            int nameStart = pos + start.length();
+            if (closingAt < nameStart + 1) {
+                closingAt = indexOf(input, closing, nameStart + 1);
+            }
+            if (closingAt == input.length()) return -1;
+            if (spaceAt < nameStart) {
+                spaceAt = nextSpace(input, nameStart);
+            }
+            return spaceAt < closingAt ? -1 : closingAt;
+        }
+        
+        /*
+         * Returns where the first end tag with the given name at or after 
+         * from starts, or -1. The end tags read on the way are kept by name;
+         * the ones before from are never needed again, since the sections 
+         * are found in order.
+         */
+        int next(String name, int from, Map<String, ArrayDeque<Integer>> ends) {
+            
+            ArrayDeque<Integer> found = ends.get(name);
+            while (found != null && !found.isEmpty() && found.peekFirst() < from) {
+                found.pollFirst();
+            }
+            if (found != null && !found.isEmpty()) return found.peekFirst();
+            
+            int pos = Math.max(read, from);
+            while (pos < input.length()) {
+                
+                int nameEnd = nameEnd(pos);
+                if (nameEnd < 0) {
+                    pos++;
+                    continue;
+                }
+                String tagName = input.subSequence(pos + start.length(), nameEnd).toString();
+                read = pos + 1;
+                if (tagName.equals(name)) return pos;
+                
+                ArrayDeque<Integer> other = ends.get(tagName);
+                if (other == null) {
+                    other = new ArrayDeque<Integer>();
+                    ends.put(tagName, other);
+                }
+                other.addLast(pos);
+                pos++;
+            }
+            read = pos;
+            return -1;
+        }
+        
+        private static boolean startsWith(CharSequence s, String prefix, int pos) {
+            
+            if (pos + prefix.length() > s.length()) return false;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (s.charAt(pos + i) != prefix.charAt(i)) return false;
+            }
+            return true;
+        }
+        
+        /* the end of the input if the text isn't found */
+        private static int indexOf(CharSequence s, String text, int from) {
+            
+            for (int i = from; i + text.length() <= s.length(); i++) {
+                if (startsWith(s, text, i)) return i;
+            }
+            return s.length();
+        }
+        
+        /* the whitespace of \s, up to the end of the input */
+        private static int nextSpace(CharSequence s, int from) {
+            
+            for (int i = from; i < s.length(); i++) {
+                switch (s.charAt(i)) {
+                case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+                    return i;
+                }
+            }
+            return s.length();
+        }
+    }
+    
+    private static class Section<T> {
+        
+        private final String name;
+        private final CompiledTemplateImpl<T> body;
+        
+        Section(String name, CompiledTemplateImpl<T> body) {
+            this.name = name;
+            this.body = body;
+        }
+    }
+}
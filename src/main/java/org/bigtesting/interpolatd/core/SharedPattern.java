@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression shared by every handler configured with the same
+ * delimiters and character class. The expression is only compiled the 
+ * first time it is used.
+ * 
+ * @author Luis Antunes
+ */
+public class SharedPattern {
+
+    private final String regex;
+    
+    private volatile Pattern pattern;
+    
+    private volatile Pattern lookahead;
+    
+    SharedPattern(String regex) {
+        
+        this.regex = regex;
+    }
+    
+    public String regex() {
+        
+        return regex;
+    }
+    
+    public Pattern get() {
+        
+        Pattern compiled = pattern;
+        if (compiled == null) {
+            /* 
+             * compiling twice in a race is harmless; 
+             * both threads get an equivalent Pattern 
+             */
+            compiled = Pattern.compile(regex);
+            pattern = compiled;
+        }
+        return compiled;
+    }
+    
+    /**
+     * Returns the expression wrapped in a lookahead, which matches where
+     * the expression does, with the same groups, but consumes nothing.
+     */
+    Pattern lookahead() {
+        
+        Pattern compiled = lookahead;
+        if (compiled == null) {
+            compiled = Pattern.compile("(?=" + regex + ")");
+            lookahead = compiled;
+        }
+        return compiled;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A global registry that interns SharedPatterns, so that Interpolators
+ * configured identically share one compiled pattern per handler. The 
+ * registry only holds weak references; a pattern disappears from it once
+ * no handler uses it anymore.
+ * 
+ * @author Luis Antunes
+ */
+public final class SharedPatterns {
+
+    private static final Map<String, PatternRef> patterns = new HashMap<String, PatternRef>();
+    
+    private static final ReferenceQueue<SharedPattern> collected = new ReferenceQueue<SharedPattern>();
+    
+    private SharedPatterns() {}
+    
+    public static SharedPattern intern(String regex) {
+        
+        synchronized (patterns) {
+            
+            purge();
+            
+            PatternRef ref = patterns.get(regex);
+            SharedPattern pattern = ref != null ? ref.get() : null;
+            if (pattern == null) {
+                pattern = new SharedPattern(regex);
+                patterns.put(regex, new PatternRef(pattern, collected));
+            }
+            return pattern;
+        }
+    }
+    
+    private static void purge() {
+        
+        PatternRef ref;
+        while ((ref = (PatternRef)collected.poll()) != null) {
+            /* the regex may have been re-interned since this reference was cleared */
+            if (patterns.get(ref.regex) == ref) {
+                patterns.remove(ref.regex);
+            }
+        }
+    }
+    
+    private static class PatternRef extends WeakReference<SharedPattern> {
+        
+        private final String regex;
+        
+        PatternRef(SharedPattern pattern, ReferenceQueue<SharedPattern> queue) {
+            super(pattern, queue);
+            this.regex = pattern.regex();
+        }
+    }
+}
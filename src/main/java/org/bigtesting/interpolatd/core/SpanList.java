@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spans of a text being edited, in order and not overlapping. They are
+ * kept in two stacks around a gap at the last edit, so that moving to the
+ * next edit only touches the spans between the two. The spans after the
+ * gap keep the offsets they had when they were moved there; what the text 
+ * has been shifted by since then is added as they are read, or moved back
+ * before the gap.
+ * 
+ * @author Luis Antunes
+ */
+class SpanList<S extends SpanList.Span> {
+
+    private final List<S> head = new ArrayList<S>();
+    
+    /* in reverse order, so that the span next to the gap is the last one */
+    private final List<S> tail = new ArrayList<S>();
+    
+    private int shift;
+    
+    int size() {
+        
+        return head.size() + tail.size();
+    }
+    
+    S get(int index) {
+        
+        return index < head.size() ? head.get(index) : 
+            tail.get(tail.size() - 1 - (index - head.size()));
+    }
+    
+    int start(int index) {
+        
+        return index < head.size() ? head.get(index).start : get(index).start + shift;
+    }
+    
+    int end(int index) {
+        
+        return index < head.size() ? head.get(index).end : get(index).end + shift;
+    }
+    
+    /**
+     * Returns the index of the first span that ends at or after offset.
+     */
+    int endingAtOrAfter(int offset) {
+        
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Replaces the spans from index from to index to with the given spans,
+     * whose offsets are already those after the edit, and shifts all the 
+     * spans after them by delta.
+     */
+    void replace(int from, int to, List<S> spans, int delta) {
+        
+        moveGap(to);
+        while (head.size() > from) {
+            head.remove(head.size() - 1);
+        }
+        head.addAll(spans);
+        shift += delta;
+    }
+    
+    private void moveGap(int index) {
+        
+        while (head.size() < index) {
+            S span = tail.remove(tail.size() - 1);
+            span.start += shift;
+            span.end += shift;
+            head.add(span);
+        }
+        while (head.size() > index) {
+            S span = head.remove(head.size() - 1);
+            span.start -= shift;
+            span.end -= shift;
+            tail.add(span);
+        }
+    }
+    
+    static class Span {
+        
+        int start;
+        int end;
+        
+        Span(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
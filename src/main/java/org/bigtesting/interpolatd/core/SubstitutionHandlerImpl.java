@@ -15,13 +15,16 @@
  */
 package org.bigtesting.interpolatd.core;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.bigtesting.interpolatd.DoubleSubstitutor;
+import org.bigtesting.interpolatd.IntSubstitutor;
+import org.bigtesting.interpolatd.LongSubstitutor;
 import org.bigtesting.interpolatd.SubstitutionHandler;
 import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.WritingSubstitutor;
 
 /**
  * 
@@ -31,30 +34,133 @@
 
     protected Substitutor<T> substitutor;
     
+    protected WritingSubstitutor<T> writingSubstitutor;
+    
     public void handleWith(Substitutor<T> substitutor) {
         
         this.substitutor = substitutor;
+        this.writingSubstitutor = null;
+    }
+    
+    public void handleWith(WritingSubstitutor<T> substitutor) {
+        
+        this.writingSubstitutor = substitutor;
+        this.substitutor = null;
+    }
+    
+    public void handleWithInt(IntSubstitutor<T> substitutor) {
+        
+        handleWith(PrimitiveWriters.ofInt(substitutor));
+    }
+    
+    public void handleWithLong(LongSubstitutor<T> substitutor) {
+        
+        handleWith(PrimitiveWriters.ofLong(substitutor));
+    }
+    
+    public void handleWithDouble(DoubleSubstitutor<T> substitutor) {
+        
+        handleWith(PrimitiveWriters.ofDouble(substitutor));
     }
 
-    protected abstract Pattern getPattern();
+    protected abstract SharedPattern getPattern();
     
     protected abstract String getCaptured(String found);
     
-    public List<Substitution> interpolate(String toInterpolate, T arg) {
+    public String substitute(String captured, T arg) {
         
-        List<Substitution> substitutions = new ArrayList<Substitution>(); 
-        if (substitutor != null) {
-            Matcher m = getPattern().matcher(toInterpolate);
+        return substitute(captured, null, arg);
+    }
+    
+    String substitute(String captured, Prepared<T> prepared, T arg) {
+        
+        if (writingSubstitutor != null) {
+            StringBuilder sb = new StringBuilder();
+            try {
+                return write(captured, prepared, arg, sb) ? sb.toString() : null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return substitutor.substitute(captured, arg);
+    }
+    
+    public boolean isWriting() {
+        
+        return writingSubstitutor != null;
+    }
+    
+    public boolean write(String captured, T arg, Appendable out) throws IOException {
+        
+        return write(captured, null, arg, out);
+    }
+    
+    boolean write(String captured, Prepared<T> prepared, T arg, Appendable out) throws IOException {
+        
+        if (prepared != null && isPreparedBy(prepared)) {
+            return prepared.substitutor.write(prepared.state, arg, out);
+        }
+        return writingSubstitutor.write(captured, arg, out);
+    }
+    
+    boolean isPreparedBy(Prepared<T> prepared) {
+        
+        return prepared.substitutor == writingSubstitutor;
+    }
+    
+    /**
+     * Returns what the PreparingSubstitutor, if that is what this handler
+     * has, prepares for the given captured string; null otherwise.
+     */
+    Prepared<T> prepare(String captured) {
+        
+        if (!(writingSubstitutor instanceof PreparingSubstitutor)) return null;
+        PreparingSubstitutor<T> preparing = (PreparingSubstitutor<T>)writingSubstitutor;
+        return new Prepared<T>(preparing, preparing.prepare(captured));
+    }
+    
+    public boolean stopsAtWhitespace() {
+        
+        return false;
+    }
+    
+    static boolean hasWhitespace(String s) {
+        
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) return true;
+        }
+        return false;
+    }
+    
+    public List<Match<T>> match(CharSequence toInterpolate, int from, int to) {
+        
+        List<Match<T>> matches = new ArrayList<Match<T>>(); 
+        if (substitutor != null || writingSubstitutor != null) {
+            RangeMatcher m = new RangeMatcher(getPattern(), toInterpolate, from, to);
             while (m.find()) {
                 
                 String found = m.group(1);
                 String captured = getCaptured(found);
-                String substitution = substitutor.substitute(captured, arg);
                 
-                substitutions.add(new Substitution(found, substitution, m.start(), m.end()));
+                matches.add(new Match<T>(this, found, captured, m.start(), m.end()));
             }
         }
         
-        return substitutions;
+        return matches;
+    }
+    
+    /*
+     * Kept with the substitutor that prepared it, since the handler may be 
+     * given another substitutor after a template is compiled.
+     */
+    static final class Prepared<T> {
+        
+        private final PreparingSubstitutor<T> substitutor;
+        private final Object state;
+        
+        Prepared(PreparingSubstitutor<T> substitutor, Object state) {
+            this.substitutor = substitutor;
+            this.state = state;
+        }
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for waiting on the tasks a parallel interpolation is split into.
+ * 
+ * @author Luis Antunes
+ */
+final class Tasks {
+
+    private Tasks() {}
+    
+    /**
+     * Waits for the given task; if it failed, cancels all the tasks 
+     * and rethrows the failure.
+     */
+    static <V> V await(Future<V> task, List<? extends Future<?>> all) {
+        
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            cancel(all);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while interpolating");
+        } catch (ExecutionException e) {
+            cancel(all);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+    
+    static void cancel(List<? extends Future<?>> tasks) {
+        
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+}
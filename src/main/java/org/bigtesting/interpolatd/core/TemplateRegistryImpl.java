@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.bigtesting.interpolatd.TemplateRegistry;
+
+/**
+ * Indexes the registered templates by the keys they use. Templates are 
+ * compiled once, when they are registered, and each refresh only renders
+ * the dependents of the changed keys; the other templates aren't looked 
+ * at. A parallel refresh splits the dependents into chunks, like a 
+ * ParallelBatch does.
+ * <p>
+ * Lookups take no lock. Registering and unregistering update the entries
+ * and the index together under one lock, so a key whose last dependent 
+ * goes away is dropped from the index without losing a concurrent 
+ * registration.
+ * 
+ * @author Luis Antunes
+ */
+public class TemplateRegistryImpl<T> implements TemplateRegistry<T> {
+
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+    
+    private final TemplateCompiler<T> compiler;
+    
+    private final ConcurrentMap<Object, Entry<T>> entries = 
+            new ConcurrentHashMap<Object, Entry<T>>();
+    
+    private final ConcurrentMap<String, Set<Object>> dependents = 
+            new ConcurrentHashMap<String, Set<Object>>();
+    
+    public TemplateRegistryImpl(TemplateCompiler<T> compiler) {
+        
+        this.compiler = compiler;
+    }
+    
+    public void register(Object id, String template, T arg) {
+        
+        if (id == null) {
+            throw new IllegalArgumentException("id cannot be null");
+        }
+        CompiledTemplateImpl<T> compiled = compiler.compile(template);
+        Entry<T> entry = new Entry<T>(compiled, arg, keys(compiled, new HashSet<String>()));
+        entry.render();
+        
+        synchronized (dependents) {
+            
+            Entry<T> previous = entries.put(id, entry);
+            if (previous != null) {
+                unindex(id, previous);
+            }
+            for (String key : entry.keys) {
+                Set<Object> ids = dependents.get(key);
+                if (ids == null) {
+                    ids = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+                    dependents.put(key, ids);
+                }
+                ids.add(id);
+            }
+        }
+    }
+    
+    public void unregister(Object id) {
+        
+        synchronized (dependents) {
+            
+            Entry<T> previous = entries.remove(id);
+            if (previous != null) {
+                unindex(id, previous);
+            }
+        }
+    }
+    
+    public String result(Object id) {
+        
+        Entry<T> entry = entries.get(id);
+        return entry != null ? entry.result : null;
+    }
+    
+    public Set<Object> dependents(Collection<String> keys) {
+        
+        Set<Object> found = new HashSet<Object>();
+        for (String key : keys) {
+            Set<Object> ids = dependents.get(key);
+            if (ids != null) found.addAll(ids);
+        }
+        return found;
+    }
+    
+    public Set<Object> refresh(Collection<String> changedKeys) {
+        
+        return render(dependents(changedKeys));
+    }
+    
+    public Set<Object> refresh(Collection<String> changedKeys, Executor executor) {
+        
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        final List<Object> ids = new ArrayList<Object>(dependents(changedKeys));
+        
+        List<FutureTask<Set<Object>>> chunks = new ArrayList<FutureTask<Set<Object>>>();
+        int chunkCount = Math.min(ids.size(),
+                Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR);
+        for (int i = 0; i < chunkCount; i++) {
+            
+            final int from = (int)((long)ids.size() * i / chunkCount);
+            final int to = (int)((long)ids.size() * (i + 1) / chunkCount);
+            FutureTask<Set<Object>> chunk = new FutureTask<Set<Object>>(new Callable<Set<Object>>() {
+                public Set<Object> call() {
+                    return render(ids.subList(from, to));
+                }
+            });
+            chunks.add(chunk);
+            executor.execute(chunk);
+        }
+        
+        Set<Object> refreshed = new HashSet<Object>();
+        for (FutureTask<Set<Object>> chunk : chunks) {
+            refreshed.addAll(Tasks.await(chunk, chunks));
+        }
+        return refreshed;
+    }
+    
+    private Set<Object> render(Collection<Object> ids) {
+        
+        Set<Object> refreshed = new HashSet<Object>();
+        for (Object id : ids) {
+            Entry<T> entry = entries.get(id);
+            if (entry == null) continue;
+            entry.render();
+            refreshed.add(id);
+        }
+        return refreshed;
+    }
+    
+    /* guarded by dependents */
+    private void unindex(Object id, Entry<T> entry) {
+        
+        for (String key : entry.keys) {
+            Set<Object> ids = dependents.get(key);
+            if (ids == null) continue;
+            ids.remove(id);
+            if (ids.isEmpty()) dependents.remove(key);
+        }
+    }
+    
+    /*
+     * Every match counts, not only the placeholders() that would render:
+     * a match overlapped by a wider one is rendered when the wider one has
+     * no value, so it has to be a dependency too. Escaped placeholders are
+     * the only ones left out.
+     */
+    private static <T> Set<String> keys(CompiledTemplateImpl<T> template, Set<String> keys) {
+        
+        for (Match<T> match : template.matches()) {
+            if (match.isEscape()) continue;
+            keys.add(match.captured());
+            if (match.fallback() != null) {
+                keys(match.fallback(), keys);
+            }
+        }
+        return keys;
+    }
+    
+    private static class Entry<T> {
+        
+        private final CompiledTemplateImpl<T> template;
+        private final T arg;
+        private final Set<String> keys;
+        
+        private volatile String result;
+        
+        Entry(CompiledTemplateImpl<T> template, T arg, Set<String> keys) {
+            this.template = template;
+            this.arg = arg;
+            this.keys = keys;
+        }
+        
+        void render() {
+            result = template.interpolate(arg);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.ResultConsumer;
+import org.bigtesting.interpolatd.Substitutor;
+
+/**
+ * Compares rendering one template for many arguments with a loop over
+ * interpolate(), and with hand-written string concatenation.
+ *
+ * @author Luis Antunes
+ */
+public class BatchBenchmark {
+
+    private static final int RECIPIENTS = 1000000;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+
+        Interpolator<String[]> interpolator = new Interpolator<String[]>();
+        interpolator.when("[0-9]").enclosedBy("#{").and("}").handleWith(new Substitutor<String[]>() {
+            public String substitute(String captured, String[] arg) {
+                return arg[captured.charAt(0) - '0'];
+            }
+        });
+
+        final String template = "Dear #{0},\nYour order #{1} has shipped to #{2}.\nThanks!";
+
+        List<String[]> recipients = new ArrayList<String[]>(RECIPIENTS);
+        for (int i = 0; i < RECIPIENTS; i++) {
+            recipients.add(new String[]{"Customer " + i, "#" + (100000 + i), "City " + (i % 100)});
+        }
+
+        final long[] checksum = new long[1];
+        ResultConsumer<String[]> consumer = new ResultConsumer<String[]>() {
+            public void accept(String[] arg, CharSequence result) {
+                checksum[0] += result.length();
+            }
+        };
+
+        for (int round = 0; round < ROUNDS; round++) {
+
+            long start = System.nanoTime();
+            for (String[] recipient : recipients) {
+                checksum[0] += interpolator.interpolate(template, recipient).length();
+            }
+            long loop = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            interpolator.interpolateAll(template, recipients, consumer);
+            long batch = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            StringBuilder sb = new StringBuilder();
+            for (String[] recipient : recipients) {
+                sb.setLength(0);
+                sb.append("Dear ").append(recipient[0]).append(",\nYour order ").append(recipient[1])
+                  .append(" has shipped to ").append(recipient[2]).append(".\nThanks!");
+                checksum[0] += sb.length();
+            }
+            long concatenation = System.nanoTime() - start;
+
+            System.out.printf("interpolate loop: %,6d ns/op   interpolateAll: %,6d ns/op   " +
+                    "concatenation: %,6d ns/op%n", loop / RECIPIENTS, batch / RECIPIENTS,
+                    concatenation / RECIPIENTS);
+        }
+        System.out.println("(checksum " + checksum[0] + ")");
+    }
+}
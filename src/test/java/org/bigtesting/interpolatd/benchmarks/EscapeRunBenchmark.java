@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.benchmarks;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+
+/**
+ * Measures interpolation of inputs containing long runs of escapes
+ * in front of a substitution pattern. Run it with increasing run
+ * lengths; the time per run should grow linearly.
+ *
+ * @author Luis Antunes
+ */
+public class EscapeRunBenchmark {
+
+    private static final int[] RUN_LENGTHS = {1000, 10000, 100000, 1000000};
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+
+        Interpolator<String> interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return arg;
+            }
+        });
+        interpolator.escapeWith("^");
+
+        for (int runLength : RUN_LENGTHS) {
+
+            String toInterpolate = escapes(runLength) + "#{x}";
+
+            /* warm up */
+            for (int i = 0; i < ITERATIONS; i++) {
+                interpolator.interpolate(toInterpolate, "value");
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                interpolator.interpolate(toInterpolate, "value");
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%,10d escapes: %,12d ns/op%n", runLength, elapsed / ITERATIONS);
+        }
+    }
+
+    private static String escapes(int count) {
+
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append('^');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.ResultConsumer;
+import org.bigtesting.interpolatd.Substitutor;
+
+/**
+ * Renders one template for a large list of arguments on 1 to N threads,
+ * N being the first program argument or the number of processors.
+ * Without contention inside the Interpolator, throughput should grow
+ * close to linearly with the number of threads, up to the number of
+ * physical cores.
+ *
+ * @author Luis Antunes
+ */
+public class ParallelScalingBenchmark {
+
+    private static final int ARGS = 2000000;
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+
+        Interpolator<String[]> interpolator = new Interpolator<String[]>();
+        interpolator.when("[0-9]").enclosedBy("#{").and("}").handleWith(new Substitutor<String[]>() {
+            public String substitute(String captured, String[] arg) {
+                return arg[captured.charAt(0) - '0'];
+            }
+        });
+
+        String template = "Dear #{0},\nYour order #{1} has shipped to #{2}.\nThanks!";
+
+        List<String[]> recipients = new ArrayList<String[]>(ARGS);
+        for (int i = 0; i < ARGS; i++) {
+            recipients.add(new String[]{"Customer " + i, "#" + (100000 + i), "City " + (i % 100)});
+        }
+
+        ResultConsumer<String[]> discard = new ResultConsumer<String[]>() {
+            public void accept(String[] arg, CharSequence result) {}
+        };
+
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) 
+                : Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    interpolator.interpolateAll(template, recipients, executor, false, discard);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                double throughput = ARGS / (best / 1e9);
+                if (threads == 1) baseline = throughput;
+                System.out.printf("%3d threads: %,14.0f ops/s  (x%.2f)%n", 
+                        threads, throughput, throughput / baseline);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
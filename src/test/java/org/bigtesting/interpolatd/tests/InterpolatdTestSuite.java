@@ -25,6 +25,29 @@
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     TestInterpolator.class,
+    TestTemplateCache.class,
+    TestResultCache.class,
+    TestSubstitutors.class,
+    TestSharedPatterns.class,
+    TestBatchInterpolation.class,
+    TestParallelInterpolation.class,
+    TestRenderingService.class,
+    TestInterpolationStage.class,
+    TestWritingSubstitutor.class,
+    TestPrimitiveSubstitutors.class,
+    TestFormattingSubstitutor.class,
+    TestFallbacks.class,
+    TestScopeChain.class,
+    TestRecursiveExpansion.class,
+    TestFragments.class,
+    TestSections.class,
+    TestLazyInterpolation.class,
+    TestRope.class,
+    TestGatheringWrite.class,
+    TestCharSequenceInput.class,
+    TestLiveTemplate.class,
+    TestTemplateRegistry.class,
+    TestPlaceholders.class,
 })
 public class InterpolatdTestSuite {
     /*
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.ResultConsumer;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestBatchInterpolation {
+
+    private Interpolator<String> interpolator;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return arg.length() == 0 ? null : arg;
+            }
+        });
+        interpolator.escapeWith("^");
+    }
+
+    @Test
+    public void testInterpolateAllReturnsOneResultPerArgument() {
+
+        List<String> results = interpolator.interpolateAll("Dear #{name}, ^#{name}",
+                Arrays.asList("John", "Jane", ""));
+
+        assertEquals(Arrays.asList("Dear John, #{name}", "Dear Jane, #{name}", "Dear #{name}, #{name}"),
+                results);
+    }
+
+    @Test
+    public void testInterpolateAllWithNoArguments() {
+
+        assertTrue(interpolator.interpolateAll("Dear #{name}", Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testInterpolateAllStreamsResultsInOrder() {
+
+        final List<String> args = new ArrayList<String>();
+        final List<String> results = new ArrayList<String>();
+        interpolator.interpolateAll("Dear #{name}!", Arrays.asList("John", "Jo", "Jane"),
+                new ResultConsumer<String>() {
+                    public void accept(String arg, CharSequence result) {
+                        args.add(arg);
+                        results.add(result.toString());
+                    }
+                });
+
+        assertEquals(Arrays.asList("John", "Jo", "Jane"), args);
+        assertEquals(Arrays.asList("Dear John!", "Dear Jo!", "Dear Jane!"), results);
+    }
+
+    @Test
+    public void testInterpolateAllScansTemplateOnce() {
+
+        interpolator.cacheTemplates(10, 1000);
+
+        interpolator.interpolateAll("Dear #{name}", Arrays.asList("John", "Jane", "Jim"));
+
+        assertEquals(1, interpolator.templateCacheStats().misses());
+        assertEquals(0, interpolator.templateCacheStats().hits());
+    }
+
+    @Test
+    public void testCompiledTemplateAppendsToBuffer() {
+
+        CompiledTemplate<String> compiled = interpolator.compile("Dear #{name}");
+        StringBuilder sb = new StringBuilder("> ");
+
+        compiled.interpolate("John", sb);
+
+        assertEquals("> Dear John", sb.toString());
+    }
+}
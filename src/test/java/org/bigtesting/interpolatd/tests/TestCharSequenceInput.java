@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestCharSequenceInput {
+
+    private Interpolator<String> interpolator;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<String>();
+        Substitutor<String> lookup = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.equals("missing") ? null : captured + "=" + arg;
+            }
+        };
+        interpolator.when().enclosedBy("#{").and("}").handleWith(lookup);
+        interpolator.when().prefixedBy("$").handleWith(lookup);
+        interpolator.escapeWith("^");
+    }
+
+    @Test
+    public void testStringBuilderSameAsString() {
+
+        String template = "Hi $name, ^#{escaped} #{missing} #{id}!";
+
+        assertEquals(interpolator.interpolate(template, "1"),
+                interpolator.interpolate(new StringBuilder(template), "1"));
+    }
+
+    @Test
+    public void testCharBuffer() {
+
+        CharBuffer decoded = CharBuffer.wrap("header:#{a} and $b");
+        decoded.position(7);
+
+        assertEquals("a=x and b=x", interpolator.interpolate(decoded, "x"));
+        assertEquals(7, decoded.position());
+    }
+
+    @Test
+    public void testCharArraySlice() {
+
+        char[] chars = "#{a}[#{b} $c]#{d}".toCharArray();
+
+        assertEquals("b=x c=x", interpolator.interpolate(chars, 5, 7, "x"));
+    }
+
+    @Test
+    public void testMatchNotFoundAcrossSliceEnd() {
+
+        char[] chars = "[#{a}]".toCharArray();
+
+        assertEquals("#{a", interpolator.interpolate(chars, 1, 3, "x"));
+    }
+
+    @Test
+    public void testToAppendable() throws Exception {
+
+        StringWriter out = new StringWriter();
+        interpolator.interpolate(new StringBuilder("<#{a}>"), "x", out);
+
+        assertEquals("<a=x>", out.toString());
+    }
+
+    @Test
+    public void testWithFallbacks() {
+
+        interpolator.fallbackWith(":-");
+
+        assertEquals("none and id=x", 
+                interpolator.interpolate(new StringBuilder("#{missing:-none} and #{id:-}"), "x"));
+    }
+
+    @Test
+    public void testMutableInputNotCached() {
+
+        interpolator.cacheTemplates(10, 1000);
+        StringBuilder template = new StringBuilder("#{a}");
+
+        assertEquals("a=x", interpolator.interpolate(template, "x"));
+        template.append(" #{b}");
+        assertEquals("a=x b=x", interpolator.interpolate(template, "x"));
+        assertEquals(0, interpolator.templateCacheStats().size());
+    }
+
+    @Test
+    public void testStringAsCharSequenceCached() {
+
+        interpolator.cacheTemplates(10, 1000);
+        CharSequence template = "#{a}";
+        interpolator.interpolate(template, "x");
+        interpolator.interpolate(template, "y");
+
+        assertEquals(1, interpolator.templateCacheStats().hits());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.WritingSubstitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestFallbacks {
+
+    private Interpolator<Map<String, String>> interpolator;
+
+    private Map<String, String> arg;
+
+    private List<String> captured;
+
+    private Substitutor<Map<String, String>> lookup;
+
+    @Before
+    public void beforeEachTest() {
+
+        captured = new ArrayList<String>();
+        lookup = new Substitutor<Map<String, String>>() {
+            public String substitute(String name, Map<String, String> arg) {
+                captured.add(name);
+                return arg.get(name);
+            }
+        };
+
+        interpolator = new Interpolator<Map<String, String>>();
+        interpolator.when("[^}]+").enclosedBy("#{").and("}").handleWith(lookup);
+        interpolator.when().prefixedBy("$").handleWith(lookup);
+        interpolator.escapeWith("^");
+        interpolator.fallbackWith(":-");
+
+        arg = new HashMap<String, String>();
+        arg.put("first", "Tom");
+        arg.put("city", "Boston");
+    }
+
+    @Test
+    public void testFallbackUsedWhenNoValue() {
+
+        assertEquals("Hello Dear Guest!", interpolator.interpolate("Hello #{name:-Dear Guest}!", arg));
+        assertEquals("name", captured.get(0));
+    }
+
+    @Test
+    public void testFallbackNotUsedWhenValue() {
+
+        assertEquals("Hello Tom!", interpolator.interpolate("Hello #{first:-Guest}!", arg));
+    }
+
+    @Test
+    public void testEmptyFallback() {
+
+        assertEquals("Hello !", interpolator.interpolate("Hello #{name:-}!", arg));
+    }
+
+    @Test
+    public void testFallbackIsATemplate() {
+
+        assertEquals("Hello Tom from Boston", 
+                interpolator.interpolate("Hello #{nick:-$first} from #{town:-$city}", arg));
+    }
+
+    @Test
+    public void testFallbackPlaceholderWithoutValueLeft() {
+
+        assertEquals("Hello $nothing", interpolator.interpolate("Hello #{nick:-$nothing}", arg));
+    }
+
+    @Test
+    public void testFallbacksChainedAcrossHandlers() {
+
+        interpolator.when().enclosedBy("[").and("]").handleWith(lookup);
+
+        assertEquals("Tom and Guest", 
+                interpolator.interpolate("#{nick:-[first:-Guest]} and #{nick:-[last:-Guest]}", arg));
+    }
+
+    @Test
+    public void testEscapedFallback() {
+
+        assertEquals("#{name:-Guest} Guest", interpolator.interpolate("^#{name:-Guest} #{name:-Guest}", arg));
+    }
+
+    @Test
+    public void testCustomSeparator() {
+
+        interpolator.fallbackWith("|");
+
+        assertEquals("anonymous Tom", interpolator.interpolate("#{name|anonymous} #{first|x}", arg));
+    }
+
+    @Test
+    public void testSeparatorPartOfNameWithoutFallbacks() {
+
+        Interpolator<Map<String, String>> plain = new Interpolator<Map<String, String>>();
+        plain.when("[^}]+").enclosedBy("#{").and("}").handleWith(lookup);
+
+        assertEquals("#{first:-Guest}", plain.interpolate("#{first:-Guest}", arg));
+        assertEquals("first:-Guest", captured.get(0));
+    }
+
+    @Test
+    public void testFallbackForWritingSubstitutor() {
+
+        Interpolator<Map<String, String>> writing = new Interpolator<Map<String, String>>();
+        writing.when("[^}]+").enclosedBy("#{").and("}").handleWith(new WritingSubstitutor<Map<String, String>>() {
+            public boolean write(String name, Map<String, String> arg, Appendable out) throws IOException {
+                out.append("partial");
+                if (!arg.containsKey(name)) return false;
+                out.append(arg.get(name));
+                return true;
+            }
+        });
+        writing.fallbackWith(":-");
+
+        assertEquals("[partialTom] [n/a]", writing.interpolate("[#{first:-x}] [#{name:-n/a}]", arg));
+    }
+
+    @Test
+    public void testParallelCompileWithFallbacks() {
+
+        Executor sameThread = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        String template = "#{name:-Guest} lives in #{city:-nowhere}";
+
+        assertEquals(interpolator.interpolate(template, arg), 
+                interpolator.compile(template, sameThread).interpolate(arg));
+    }
+}
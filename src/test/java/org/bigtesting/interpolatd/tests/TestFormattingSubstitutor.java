@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutors;
+import org.bigtesting.interpolatd.ValueSubstitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestFormattingSubstitutor {
+
+    private List<String> names;
+
+    private ValueSubstitutor<Map<String, Object>> values;
+
+    private Map<String, Object> arg;
+
+    @Before
+    public void beforeEachTest() {
+
+        names = new ArrayList<String>();
+        values = new ValueSubstitutor<Map<String, Object>>() {
+            public Object substitute(String name, Map<String, Object> arg) {
+                synchronized (names) {
+                    names.add(name);
+                }
+                return arg.get(name);
+            }
+        };
+
+        arg = new HashMap<String, Object>();
+        arg.put("amount", 1234.567);
+        arg.put("count", 42);
+        arg.put("ratio", 0.25);
+        arg.put("due", date(2014, Calendar.MARCH, 7, 14, 30));
+        arg.put("name", "Tom");
+    }
+
+    @Test
+    public void testNumberPattern() {
+
+        assertEquals("Total: 1234.57", interpolator(Locale.US).interpolate("Total: #{amount,number,#.##}", arg));
+        assertEquals("amount", names.get(0));
+    }
+
+    @Test
+    public void testNumberStyles() {
+
+        assertEquals("1,234.567 1,235 25% $1,234.57", interpolator(Locale.US).interpolate(
+                "#{amount,number} #{amount,number,integer} #{ratio,number,percent} #{amount,number,currency}", arg));
+    }
+
+    @Test
+    public void testPatternWithCommaInLocale() {
+
+        assertEquals("1.234,57", interpolator(Locale.GERMANY).interpolate("#{amount,number,#,##0.00}", arg));
+    }
+
+    @Test
+    public void testDatePatternAndStyles() {
+
+        assertEquals("2014-03-07 14:30 | 3/7/14 | 2:30 PM", interpolator(Locale.US).interpolate(
+                "#{due,date,yyyy-MM-dd HH:mm} | #{due,date,short} | #{due,time,short}", arg));
+    }
+
+    @Test
+    public void testNoSpec() {
+
+        assertEquals("Tom has 42", interpolator(Locale.US).interpolate("#{name} has #{count}", arg));
+    }
+
+    @Test
+    public void testMissingValueLeavesMatch() {
+
+        assertEquals("#{missing,number} 42", interpolator(Locale.US).interpolate("#{missing,number} #{count}", arg));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormatType() {
+
+        interpolator(Locale.US).interpolate("#{amount,money}", arg);
+    }
+
+    @Test
+    public void testUnknownFormatTypeFailsRender() {
+
+        CompiledTemplate<Map<String, Object>> compiled = 
+            interpolator(Locale.US).compile("Total: #{amount,money}");
+        try {
+            compiled.interpolate(arg);
+            fail("expected the spec to be rejected when rendered");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("money"));
+        }
+        assertTrue(names.isEmpty());
+    }
+
+    @Test
+    public void testEscapedBadSpecLeftAsIs() {
+
+        Interpolator<Map<String, Object>> interpolator = interpolator(Locale.US);
+        interpolator.escapeWith("^");
+
+        assertEquals("#{amount,bogus} ok", interpolator.interpolate("^#{amount,bogus} ok", arg));
+    }
+
+    @Test
+    public void testSpecWithFallback() {
+
+        Interpolator<Map<String, Object>> interpolator = interpolator(Locale.US);
+        interpolator.fallbackWith(":-");
+
+        assertEquals("3/7/14 never", interpolator.interpolate(
+                "#{due,date,short:-never} #{missing,date,short:-never}", arg));
+        assertEquals(Arrays.asList("due", "missing"), names);
+    }
+
+    @Test
+    public void testCompiledSpecsRenderedRepeatedly() {
+
+        CompiledTemplate<Map<String, Object>> compiled = interpolator(Locale.US).compile(
+                "#{amount,number,#.#} #{count,number,#.#} #{ratio,number,percent} #{name}");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("1234.6 42 25% Tom", compiled.interpolate(arg));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testFormatsSharedAcrossThreads() throws Exception {
+
+        final Interpolator<Map<String, Object>> interpolator = interpolator(Locale.US);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                final int day = t + 1;
+                results.add(pool.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        Map<String, Object> own = new HashMap<String, Object>();
+                        own.put("due", date(2014, Calendar.MARCH, day, 9, 0));
+                        own.put("amount", day * 1000.5);
+                        String expected = "2014-03-0" + day + " " + String.format(Locale.US, "%,.1f", day * 1000.5);
+                        for (int i = 0; i < 2000; i++) {
+                            String result = interpolator.interpolate("#{due,date,yyyy-MM-dd} #{amount,number,#,##0.0}", own);
+                            if (!result.equals(expected)) return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Interpolator<Map<String, Object>> interpolator(Locale locale) {
+
+        Interpolator<Map<String, Object>> interpolator = new Interpolator<Map<String, Object>>();
+        interpolator.when("[^}]+").enclosedBy("#{").and("}")
+            .handleWith(Substitutors.formatting(values, locale));
+        return interpolator;
+    }
+
+    private static Date date(int year, int month, int day, int hour, int minute) {
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTime();
+    }
+}
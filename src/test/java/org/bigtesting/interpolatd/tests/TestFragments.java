@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.KeyExtractor;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestFragments {
+
+    private Interpolator<String> interpolator;
+
+    private AtomicInteger calls;
+
+    @Before
+    public void beforeEachTest() {
+
+        calls = new AtomicInteger();
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("{{>").and("}}").handleWith(interpolator.includes());
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                calls.incrementAndGet();
+                return captured.equals("user") ? arg : captured.toUpperCase();
+            }
+        });
+
+        interpolator.fragment("header", "<h1>Welcome #{user}</h1>");
+        interpolator.fragment("footer", "<p>(c) #{year}</p>", true);
+    }
+
+    @Test
+    public void testFragmentsIncluded() {
+
+        assertEquals("<h1>Welcome tom</h1><div>body</div><p>(c) YEAR</p>", 
+                interpolator.interpolate("{{>header}}<div>body</div>{{>footer}}", "tom"));
+    }
+
+    @Test
+    public void testFragmentRenderedForEachArgument() {
+
+        assertEquals("<h1>Welcome tom</h1>", interpolator.interpolate("{{>header}}", "tom"));
+        assertEquals("<h1>Welcome ann</h1>", interpolator.interpolate("{{>header}}", "ann"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testConstantFragmentRenderedOnce() {
+
+        interpolator.interpolate("{{>footer}}", "tom");
+        interpolator.interpolate("{{>footer}} {{>footer}}", "ann");
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testMissingFragmentLeft() {
+
+        assertEquals("{{>sidebar}}", interpolator.interpolate("{{>sidebar}}", "tom"));
+    }
+
+    @Test
+    public void testNestedFragments() {
+
+        interpolator.fragment("page", "{{>header}}...{{>footer}}");
+
+        assertEquals("<h1>Welcome tom</h1>...<p>(c) YEAR</p>", interpolator.interpolate("{{>page}}", "tom"));
+    }
+
+    @Test
+    public void testFragmentIncludingItselfFails() {
+
+        interpolator.fragment("loop", "<li>{{>loop}}</li>");
+        try {
+            interpolator.interpolate("<ul>{{>loop}}</ul>", "tom");
+            fail("expected the cycle to be reported");
+        } catch (IllegalStateException e) {
+            assertEquals("cycle in fragments: loop -> loop", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFragmentsIncludingEachOtherFail() {
+
+        interpolator.fragment("a", "A{{>b}}");
+        interpolator.fragment("b", "B{{>header}}{{>a}}");
+        try {
+            interpolator.interpolate("{{>a}}", "tom");
+            fail("expected the cycle to be reported");
+        } catch (IllegalStateException e) {
+            assertEquals("cycle in fragments: a -> b -> a", e.getMessage());
+        }
+
+        /* nothing is left behind for the next render */
+        interpolator.fragment("b", "B{{>header}}");
+        assertEquals("AB<h1>Welcome tom</h1>", interpolator.interpolate("{{>a}}", "tom"));
+    }
+
+    @Test
+    public void testFragmentsNestedTooDeeplyFail() {
+
+        for (int i = 0; i < 100; i++) {
+            interpolator.fragment("f" + i, "{{>f" + (i + 1) + "}}");
+        }
+        interpolator.fragment("f100", "end");
+        try {
+            interpolator.interpolate("{{>f0}}", "tom");
+            fail("expected the depth to be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("fragments nested deeper than 64: f0 -> f1 -> "));
+        }
+    }
+
+    @Test
+    public void testFragmentReplaced() {
+
+        interpolator.fragment("header", "<h2>#{user}</h2>");
+
+        assertEquals("<h2>tom</h2>", interpolator.interpolate("{{>header}}", "tom"));
+    }
+
+    @Test
+    public void testFragmentRemoved() {
+
+        interpolator.removeFragment("header");
+
+        assertEquals("{{>header}}", interpolator.interpolate("{{>header}}", "tom"));
+    }
+
+    @Test
+    public void testFragmentRecompiledWhenConfigurationChanges() {
+
+        interpolator.fragment("escaped", "^#{user} #{user}");
+        assertEquals("^tom tom", interpolator.interpolate("{{>escaped}}", "tom"));
+
+        interpolator.escapeWith("^");
+        assertEquals("#{user} tom", interpolator.interpolate("{{>escaped}}", "tom"));
+    }
+
+    @Test
+    public void testFragmentWrittenToWriter() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        interpolator.interpolate("{{>header}}|{{>footer}}", "tom", writer);
+
+        assertEquals("<h1>Welcome tom</h1>|<p>(c) YEAR</p>", writer.toString());
+    }
+
+    @Test
+    public void testFragmentIncludedInResultCacheInvalidated() {
+
+        interpolator.cacheResults(new KeyExtractor<String>() {
+            public Object keyFor(String arg) {
+                return arg;
+            }
+        }, 100, 0, TimeUnit.SECONDS);
+
+        assertEquals("<h1>Welcome tom</h1>", interpolator.interpolate("{{>header}}", "tom"));
+        interpolator.fragment("header", "<h2>#{user}</h2>");
+        assertEquals("<h2>tom</h2>", interpolator.interpolate("{{>header}}", "tom"));
+    }
+}
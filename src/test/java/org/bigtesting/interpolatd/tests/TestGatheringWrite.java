@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.WritingSubstitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestGatheringWrite {
+
+    private Interpolator<String> interpolator;
+
+    private RecordingChannel channel;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.equals("missing") ? null : arg;
+            }
+        });
+        interpolator.escapeWith("^");
+        channel = new RecordingChannel(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testSameAsInterpolate() throws Exception {
+
+        String template = "<p>caf\u00e9 #{name}</p> ^#{escaped} #{missing} \u20ac#{name}";
+        interpolator.interpolate(template, "na\u00efve", channel);
+
+        assertEquals(interpolator.interpolate(template, "na\u00efve"), channel.written());
+        assertEquals(1, channel.writes);
+    }
+
+    @Test
+    public void testLiteralsPreEncoded() throws Exception {
+
+        CompiledTemplate<String> template = interpolator.compile("<html>#{a}<body>#{b}</body></html>");
+        template.interpolate("1", channel);
+        channel.readOnly = 0;
+        template.interpolate("2", channel);
+
+        assertEquals("<html>1<body>1</body></html><html>2<body>2</body></html>", channel.written());
+        assertEquals(3, channel.readOnly);
+    }
+
+    @Test
+    public void testPartialWrites() throws Exception {
+
+        channel = new RecordingChannel(3);
+        interpolator.compile("Hello #{name}, welcome to #{place}!").interpolate("world", channel);
+
+        assertEquals("Hello world, welcome to world!", channel.written());
+        assertTrue(channel.writes > 1);
+    }
+
+    @Test
+    public void testSurrogatePairWrittenOneCharAtATime() throws Exception {
+
+        interpolator.when().enclosedBy("@{").and("}").handleWith(new WritingSubstitutor<String>() {
+            public boolean write(String captured, String arg, Appendable out) throws IOException {
+                for (int i = 0; i < arg.length(); i++) out.append(arg.charAt(i));
+                return true;
+            }
+        });
+        interpolator.compile("[@{x}]").interpolate("\ud83d\ude00", channel);
+
+        assertEquals("[\ud83d\ude00]", channel.written());
+    }
+
+    @Test
+    public void testEmptyTemplate() throws Exception {
+
+        interpolator.compile("").interpolate("x", channel);
+
+        assertEquals("", channel.written());
+    }
+
+    @Test
+    public void testWithTemplateCache() throws Exception {
+
+        interpolator.cacheTemplates(10, 1000);
+        interpolator.interpolate("[#{x}]", "a", channel);
+        interpolator.interpolate("[#{x}]", "b", channel);
+
+        assertEquals("[a][b]", channel.written());
+        assertEquals(1, interpolator.templateCacheStats().hits());
+    }
+
+    private static class RecordingChannel implements GatheringByteChannel {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final int maxPerWrite;
+        private int writes;
+        private int readOnly;
+
+        RecordingChannel(int maxPerWrite) {
+            this.maxPerWrite = maxPerWrite;
+        }
+
+        String written() throws IOException {
+            return new String(bytes.toByteArray(), "UTF-8");
+        }
+
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            writes++;
+            long written = 0;
+            for (int i = offset; i < offset + length && written < maxPerWrite; i++) {
+                if (srcs[i].isReadOnly() && srcs[i].hasRemaining()) readOnly++;
+                while (srcs[i].hasRemaining() && written < maxPerWrite) {
+                    bytes.write(srcs[i].get());
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        public int write(ByteBuffer src) {
+            return (int)write(new ByteBuffer[] {src});
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {}
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bigtesting.interpolatd.InterpolationStage;
+import org.bigtesting.interpolatd.InterpolationSubscriber;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestInterpolationStage {
+
+    private Interpolator<String> interpolator;
+
+    private Recorder recorder;
+
+    private ExecutorService pool;
+
+    private volatile CyclicBarrier barrier;
+
+    @Before
+    public void beforeEachTest() {
+
+        pool = Executors.newCachedThreadPool();
+        recorder = new Recorder();
+
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                if (captured.equals("broken")) throw new IllegalStateException("broken");
+                if (captured.equals("error")) throw new AssertionError("error");
+                if (barrier != null) {
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return captured + "-" + arg;
+            }
+        });
+    }
+
+    @After
+    public void afterEachTest() {
+
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testResultsDeliveredOnlyAsRequested() throws Exception {
+
+        InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, recorder, 5);
+        stage.offer("#{x}", "1");
+        stage.offer("#{y}", "2");
+        stage.offer("#{x}!", "3");
+        assertTrue(recorder.results.isEmpty());
+
+        stage.request(2);
+        assertEquals(Arrays.asList("x-1", "y-2"), recorder.results);
+
+        stage.request(5);
+        assertEquals(Arrays.asList("x-1", "y-2", "x-3!"), recorder.results);
+
+        stage.offer("#{z}", "4");
+        assertEquals(Arrays.asList("x-1", "y-2", "x-3!", "z-4"), recorder.results);
+    }
+
+    @Test
+    public void testCompletedAfterBufferedElementsDelivered() throws Exception {
+
+        InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, recorder, 5);
+        stage.offer("#{x}", "1");
+        stage.complete();
+        assertFalse(recorder.completed);
+
+        stage.request(1);
+        assertEquals(Arrays.asList("x-1"), recorder.results);
+        assertTrue(recorder.completed);
+    }
+
+    @Test(timeout = 10000)
+    public void testOfferBlocksWhileBufferFull() throws Exception {
+
+        final InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, recorder, 2);
+        stage.offer("#{x}", "1");
+        stage.offer("#{x}", "2");
+
+        final AtomicBoolean offered = new AtomicBoolean();
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    stage.offer("#{x}", "3");
+                    offered.set(true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        producer.start();
+        Thread.sleep(100);
+        assertFalse(offered.get());
+
+        stage.request(1);
+        producer.join();
+        assertTrue(offered.get());
+        assertEquals(Arrays.asList("x-1"), recorder.results);
+    }
+
+    @Test
+    public void testFailureTerminatesStage() throws Exception {
+
+        InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, recorder, 5);
+        stage.request(10);
+        stage.offer("#{x}", "1");
+        stage.offer("#{broken}", "2");
+
+        assertEquals(Arrays.asList("x-1"), recorder.results);
+        assertEquals("broken", recorder.error.getMessage());
+        try {
+            stage.offer("#{x}", "3");
+            fail("expected the stage to reject the element");
+        } catch (IllegalStateException e) {}
+        stage.complete();
+        assertFalse(recorder.completed);
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorFromSubstitutorTerminatesStage() throws Exception {
+
+        InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, recorder, 5);
+        stage.request(10);
+        stage.offer("#{error}", "1");
+
+        assertTrue(recorder.error instanceof AssertionError);
+        try {
+            stage.offer("#{x}", "2");
+            fail("expected the stage to reject the element");
+        } catch (IllegalStateException e) {}
+    }
+
+    @Test(timeout = 10000)
+    public void testThrowingSubscriberCancelsStage() throws Exception {
+
+        Recorder throwing = new Recorder() {
+            public void onNext(String arg, CharSequence result) {
+                super.onNext(arg, result);
+                throw new IllegalStateException("subscriber failed");
+            }
+        };
+        InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, throwing, 1);
+        stage.offer("#{x}", "1");
+        try {
+            stage.request(5);
+            fail("expected the subscriber's exception");
+        } catch (IllegalStateException e) {
+            assertEquals("subscriber failed", e.getMessage());
+        }
+
+        /* the stage must neither stall nor deliver again */
+        stage.request(1);
+        stage.complete();
+        try {
+            stage.offer("#{x}", "2");
+            fail("expected the stage to reject the element");
+        } catch (IllegalStateException e) {}
+        assertEquals(Arrays.asList("x-1"), throwing.results);
+        assertFalse(throwing.completed);
+        assertNull(throwing.error);
+    }
+
+    @Test
+    public void testCancelDropsBufferedElements() throws Exception {
+
+        InterpolationStage<String> stage = new InterpolationStage<String>(interpolator, recorder, 5);
+        stage.offer("#{x}", "1");
+        stage.cancel();
+        stage.request(1);
+
+        assertTrue(recorder.results.isEmpty());
+        assertFalse(recorder.completed);
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentInterpolationDeliveredInOrder() throws Exception {
+
+        InterpolationStage<String> stage = 
+            new InterpolationStage<String>(interpolator, recorder, 10, pool, 3);
+        barrier = new CyclicBarrier(3);
+
+        stage.request(Long.MAX_VALUE);
+        stage.offer("#{a}", "1");
+        stage.offer("#{b}", "2");
+        stage.offer("#{c}", "3");
+        stage.complete();
+
+        recorder.done.await();
+        assertEquals(Arrays.asList("a-1", "b-2", "c-3"), recorder.results);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferSizeMustBePositive() {
+
+        new InterpolationStage<String>(interpolator, recorder, 0);
+    }
+
+    private static class Recorder implements InterpolationSubscriber<String> {
+
+        private final List<String> results = new CopyOnWriteArrayList<String>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        public void onNext(String arg, CharSequence result) {
+            results.add(result.toString());
+        }
+
+        public void onError(Throwable error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
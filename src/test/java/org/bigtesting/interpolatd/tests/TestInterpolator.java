@@ -606,6 +606,40 @@ public void testQuadrupleEscapeWithPrefixed() {
                 interpolator.interpolate("Hello ^^^^:name", map));
     }
     
+    @Test
+    public void testQuintupleEscapeWithPrefixed() {
+        
+        map.put("name", new Value().forPrefixed("John"));
+        
+        assertEquals("Hello ^^:name", 
+                interpolator.interpolate("Hello ^^^^^:name", map));
+    }
+    
+    @Test(timeout = 5000)
+    public void testLongEvenRunOfEscapesWithPrefixed() {
+        
+        map.put("name", new Value().forPrefixed("John"));
+        
+        assertEquals("Hello " + escapes(50000) + "John", 
+                interpolator.interpolate("Hello " + escapes(100000) + ":name", map));
+    }
+    
+    @Test(timeout = 5000)
+    public void testLongOddRunOfEscapesWithPrefixed() {
+        
+        map.put("name", new Value().forPrefixed("John"));
+        
+        assertEquals("Hello " + escapes(50000) + ":name", 
+                interpolator.interpolate("Hello " + escapes(100001) + ":name", map));
+    }
+    
+    @Test(timeout = 5000)
+    public void testLongRunOfEscapesOnItsOwn() {
+        
+        String toInterpolate = "Hello " + escapes(100000) + " there";
+        assertEquals(toInterpolate, interpolator.interpolate(toInterpolate, map));
+    }
+    
     @Test
     public void testEscapeOnItsOwn() {
         
@@ -929,6 +963,15 @@ public void testEscapeWithSinglePrefixedSquareBracketWhichExistsForAny() {
     
     /*-----------------------------------*/
     
+    private static String escapes(int count) {
+        
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append('^');
+        }
+        return sb.toString();
+    }
+    
     private static class ValueMap {
         
         private Map<String, Value> map = new HashMap<String, Value>();
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.LazyInterpolation;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestLazyInterpolation {
+
+    private Interpolator<String> interpolator;
+
+    private AtomicInteger calls;
+
+    @Before
+    public void beforeEachTest() {
+
+        calls = new AtomicInteger();
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                calls.incrementAndGet();
+                return arg;
+            }
+        });
+        interpolator.cacheTemplates(100, 10000);
+    }
+
+    @Test
+    public void testNothingDoneUntilUsed() {
+
+        LazyInterpolation<String> message = interpolator.lazy("user #{name} logged in", "tom");
+
+        assertFalse(message.isRendered());
+        assertEquals(0, calls.get());
+        assertEquals(0, interpolator.templateCacheStats().misses());
+    }
+
+    @Test
+    public void testInterpolatedOnFirstUseOnly() {
+
+        LazyInterpolation<String> message = interpolator.lazy("user #{name} logged in", "tom");
+
+        assertEquals("user tom logged in", message.toString());
+        assertTrue(message.isRendered());
+        assertEquals("user tom logged in", message.toString());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCharSequence() {
+
+        CharSequence message = interpolator.lazy("[#{x}]", "abc");
+
+        assertEquals(5, message.length());
+        assertEquals('b', message.charAt(2));
+        assertEquals("abc", message.subSequence(1, 4).toString());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testAppendTo() throws Exception {
+
+        LazyInterpolation<String> message = interpolator.lazy("[#{x}]", "abc");
+        StringWriter writer = new StringWriter();
+        message.appendTo(writer);
+        message.appendTo(writer);
+
+        assertEquals("[abc][abc]", writer.toString());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testUsableWhereStringExpected() {
+
+        StringBuilder sb = new StringBuilder("> ").append(interpolator.lazy("#{x}", "hi"));
+
+        assertEquals("> hi", sb.toString());
+    }
+}
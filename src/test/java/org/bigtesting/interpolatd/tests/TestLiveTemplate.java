@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.LiveTemplate;
+import org.bigtesting.interpolatd.SectionProvider;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestLiveTemplate {
+
+    private Interpolator<String> interpolator;
+
+    private AtomicInteger calls;
+
+    @Before
+    public void beforeEachTest() {
+
+        calls = new AtomicInteger();
+        interpolator = new Interpolator<String>();
+        Substitutor<String> lookup = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                calls.incrementAndGet();
+                return captured.startsWith("x") ? null : captured.toUpperCase() + arg;
+            }
+        };
+        interpolator.when().enclosedBy("#{").and("}").handleWith(lookup);
+        interpolator.when().prefixedBy("$").handleWith(lookup);
+        interpolator.escapeWith("^");
+    }
+
+    @Test
+    public void testInitialResult() {
+
+        LiveTemplate<String> live = interpolator.live("Hi #{name}, ^#{escaped} $id #{x}", "1");
+
+        assertEquals("Hi #{name}, ^#{escaped} $id #{x}", live.template());
+        assertEquals("Hi NAME1, #{escaped} ID1 #{x}", live.result());
+    }
+
+    @Test
+    public void testOnlyEditedPlaceholderSubstituted() {
+
+        StringBuilder doc = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            doc.append("line ").append(i).append(": #{p").append(i).append("}\n");
+        }
+        LiveTemplate<String> live = interpolator.live(doc.toString(), "!");
+        assertEquals(100, calls.get());
+
+        int at = live.template().indexOf("#{p50}") + 3;
+        live.edit(at, 1, "7");
+        live.edit(at + 1, 0, "7");
+
+        assertEquals(102, calls.get());
+        assertEquals(interpolator.interpolate(live.template(), "!"), live.result());
+        assertTrue(live.result().contains("line 50: P770!\n"));
+    }
+
+    @Test
+    public void testEditCompletesPlaceholder() {
+
+        LiveTemplate<String> live = interpolator.live("a #{name b", "1");
+        live.edit(8, 0, "}");
+
+        assertEquals("a #{name} b", live.template());
+        assertEquals("a NAME1 b", live.result());
+    }
+
+    @Test
+    public void testEditBreaksPlaceholder() {
+
+        LiveTemplate<String> live = interpolator.live("a #{name} $b", "1");
+        live.edit(5, 0, " ");
+
+        assertEquals("a #{n ame} B1", live.result());
+    }
+
+    @Test
+    public void testEditEscapesPlaceholder() {
+
+        LiveTemplate<String> live = interpolator.live("a #{name}", "1");
+        live.edit(2, 0, "^");
+
+        assertEquals("a #{name}", live.result());
+    }
+
+    @Test
+    public void testDeleteEverything() {
+
+        LiveTemplate<String> live = interpolator.live("a #{name}", "1");
+        live.edit(0, 9, "");
+
+        assertEquals("", live.result());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEditOutOfBounds() {
+
+        interpolator.live("abc", "1").edit(2, 2, "");
+    }
+
+    @Test
+    public void testRandomEditsSameAsInterpolate() {
+
+        interpolator.when("[a-z ]+").enclosedBy("[[").and("]]").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return "<" + captured + ">";
+            }
+        });
+        interpolator.sectionsWith("{{#", "{{/", "}}", new SectionProvider<String>() {
+            public Iterable<String> rows(String name, String arg) {
+                return name.equals("r") ? Arrays.asList(arg, arg + arg) : null;
+            }
+        });
+        interpolator.fallbackWith(":-");
+
+        String[] tokens = {"#{", "}", "$", "a", "b", "x", " ", "\n", "^", ":-", 
+                "[[", "]]", "{{#r}}", "{{/r}}", "#{a}", "$b "};
+        Random random = new Random(42);
+        LiveTemplate<String> live = interpolator.live("", "1");
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 2000; i++) {
+
+            int offset = random.nextInt(expected.length() + 1);
+            int removed = random.nextInt(4) == 0 ? 
+                    random.nextInt(Math.min(8, expected.length() - offset) + 1) : 0;
+            StringBuilder inserted = new StringBuilder();
+            for (int t = random.nextInt(3); t > 0; t--) {
+                inserted.append(tokens[random.nextInt(tokens.length)]);
+            }
+            if (expected.length() > 200) {
+                removed = Math.min(expected.length() - offset, 20);
+            }
+
+            live.edit(offset, removed, inserted.toString());
+            expected.replace(offset, offset + removed, inserted.toString());
+
+            assertEquals(expected.toString(), live.template());
+            assertEquals("after edit " + i, interpolator.interpolate(expected.toString(), "1"), 
+                    live.result());
+        }
+    }
+
+    @Test
+    public void testRandomEditsWithExpansionSameAsInterpolate() {
+
+        interpolator = new Interpolator<String>();
+        Substitutor<String> lookup = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                if (captured.startsWith("x")) return null;
+                if (captured.equals("a")) return "$b!";
+                return captured.toUpperCase() + arg;
+            }
+        };
+        interpolator.when().enclosedBy("#{").and("}").handleWith(lookup);
+        interpolator.when().prefixedBy("$").handleWith(lookup);
+        interpolator.escapeWith("^");
+        interpolator.expandRecursively(3);
+
+        String[] tokens = {"#{", "}", "$", "a", "b", "x", " ", "^", "^^", 
+                "#{a}", "$b ", "$a", "^$a", "$b$a", "#{x}#{b}"};
+        for (int seed = 0; seed < 5; seed++) {
+
+            Random random = new Random(seed);
+            LiveTemplate<String> live = interpolator.live("", "1");
+            StringBuilder expected = new StringBuilder();
+
+            for (int i = 0; i < 1000; i++) {
+
+                int offset = random.nextInt(expected.length() + 1);
+                int removed = random.nextInt(3) == 0 ? 
+                        random.nextInt(Math.min(12, expected.length() - offset) + 1) : 0;
+                StringBuilder inserted = new StringBuilder();
+                for (int t = random.nextInt(4); t > 0; t--) {
+                    inserted.append(tokens[random.nextInt(tokens.length)]);
+                }
+                if (expected.length() > 300) {
+                    removed = Math.min(expected.length() - offset, 25);
+                }
+
+                live.edit(offset, removed, inserted.toString());
+                expected.replace(offset, offset + removed, inserted.toString());
+
+                assertEquals("seed " + seed + ", edit " + i, 
+                        interpolator.interpolate(expected.toString(), "1"), live.result());
+            }
+            assertEquals(expected.toString(), live.template());
+        }
+    }
+}
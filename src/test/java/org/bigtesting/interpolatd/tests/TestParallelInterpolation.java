@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.ResultConsumer;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestParallelInterpolation {
+
+    private Interpolator<Integer> interpolator;
+
+    private ExecutorService executor;
+
+    private List<Integer> args;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<Integer>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<Integer>() {
+            public String substitute(String captured, Integer arg) {
+                if (arg < 0) throw new IllegalArgumentException("negative: " + arg);
+                return captured.equals("n") ? String.valueOf(arg) : null;
+            }
+        });
+        interpolator.escapeWith("^");
+
+        executor = Executors.newFixedThreadPool(4);
+
+        args = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            args.add(i);
+        }
+    }
+
+    @After
+    public void afterEachTest() {
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testParallelResultsInArgumentOrder() {
+
+        List<String> results = interpolator.interpolateAll("#{n} ^#{n} #{x}", args, executor);
+
+        assertEquals(interpolator.interpolateAll("#{n} ^#{n} #{x}", args), results);
+    }
+
+    @Test
+    public void testParallelOrderedConsumerCalledInArgumentOrder() {
+
+        final List<Integer> seen = new ArrayList<Integer>();
+        interpolator.interpolateAll("#{n}", args, executor, true, new ResultConsumer<Integer>() {
+            public void accept(Integer arg, CharSequence result) {
+                assertEquals(String.valueOf(arg), result.toString());
+                seen.add(arg);
+            }
+        });
+
+        assertEquals(args, seen);
+    }
+
+    @Test
+    public void testParallelUnorderedConsumerReceivesEveryResult() {
+
+        final Set<String> results = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        interpolator.interpolateAll("n=#{n}", args, executor, false, new ResultConsumer<Integer>() {
+            public void accept(Integer arg, CharSequence result) {
+                results.add(result.toString());
+            }
+        });
+
+        Set<String> expected = new HashSet<String>();
+        for (Integer arg : args) {
+            expected.add("n=" + arg);
+        }
+        assertEquals(expected, results);
+    }
+
+    @Test
+    public void testParallelWithFewerArgumentsThanChunks() {
+
+        List<Integer> few = new ArrayList<Integer>(args.subList(0, 2));
+
+        assertEquals(2, interpolator.interpolateAll("#{n}", few, executor).size());
+        assertTrue(interpolator.interpolateAll("#{n}", new ArrayList<Integer>(), executor).isEmpty());
+    }
+
+    @Test
+    public void testLargeInputScannedInParallelLikeSequentially() {
+
+        Interpolator<String> interpolator = newStringInterpolator();
+        interpolator.when("[^}]+").enclosedBy("{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.startsWith("a") ? "<" + captured.length() + ">" : null;
+            }
+        });
+
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        String[] pieces = {"#{name}", "^#{name}", "^^#{name}", "#{other}", "{a long value}", 
+                "{b}", "{an unclosed one", "^", " ", "\n", "text", "#{", "}"};
+        while (sb.length() < 1000000) {
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        }
+        String input = sb.toString();
+
+        assertEquals(interpolator.interpolate(input, "John"), 
+                interpolator.interpolate(input, "John", executor));
+    }
+
+    @Test
+    public void testMatchSpanningWholeChunksScannedInParallelLikeSequentially() {
+
+        /*
+         * a scan resuming inside the long match would find matches
+         * that a sequential scan never sees; since the long match is 
+         * left unsubstituted, those would then be substituted
+         */
+        Interpolator<String> interpolator = newStringInterpolator();
+        interpolator.when("[a-z: ]+").prefixedBy(":").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.length() < 1000000 ? "[" + captured.length() + "]" : null;
+            }
+        });
+
+        StringBuilder sb = new StringBuilder("start :");
+        for (int i = 0; i < 1500000; i++) {
+            sb.append(i % 10 == 0 ? ' ' : i % 10 == 5 ? ':' : 'x');
+        }
+        sb.append("! :after #{name} ");
+        for (int i = 0; i < 100000; i++) {
+            sb.append(i % 7 == 0 ? ":x" : "#{name} ");
+        }
+        String input = sb.toString();
+
+        assertEquals(interpolator.interpolate(input, "John"), 
+                interpolator.interpolate(input, "John", executor));
+    }
+
+    @Test
+    public void testSmallInputScannedInParallel() {
+
+        Interpolator<String> interpolator = newStringInterpolator();
+
+        assertEquals("Hello John #{name}", interpolator.interpolate("Hello #{name} ^#{name}", "John", executor));
+    }
+
+    @Test
+    public void testParallelFailurePropagated() {
+
+        args.set(5000, -1);
+        try {
+            interpolator.interpolateAll("#{n}", args, executor);
+            fail("expected the Substitutor's exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("negative: -1", e.getMessage());
+        }
+    }
+    
+    private Interpolator<String> newStringInterpolator() {
+
+        Interpolator<String> interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.equals("name") ? arg : null;
+            }
+        });
+        interpolator.escapeWith("^");
+        return interpolator;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bigtesting.interpolatd.EnclosureClosingHandler;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.PrefixHandler;
+import org.bigtesting.interpolatd.SubstitutionHandler;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestPlaceholders {
+
+    private Interpolator<String> interpolator;
+
+    private EnclosureClosingHandler<String> enclosed;
+
+    private PrefixHandler<String> prefixed;
+
+    private Map<String, Set<String>> substituted;
+
+    @Before
+    public void beforeEachTest() {
+
+        substituted = new HashMap<String, Set<String>>();
+        interpolator = new Interpolator<String>();
+        enclosed = interpolator.when().enclosedBy("#{").and("}");
+        enclosed.handleWith(recording("enclosed"));
+        prefixed = interpolator.when().prefixedBy("#");
+        prefixed.handleWith(recording("prefixed"));
+        interpolator.escapeWith("^");
+    }
+
+    private Substitutor<String> recording(final String handler) {
+
+        substituted.put(handler, new LinkedHashSet<String>());
+        return new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                substituted.get(handler).add(captured);
+                return captured;
+            }
+        };
+    }
+
+    @Test
+    public void testByHandlerInOrder() {
+
+        Map<SubstitutionHandler<String>, Set<String>> placeholders = 
+                interpolator.placeholders("#{b} #a #{a} #{b} #c");
+
+        assertEquals(2, placeholders.size());
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(placeholders.get(enclosed).toArray()));
+        assertEquals(Arrays.asList("a", "c"), Arrays.asList(placeholders.get(prefixed).toArray()));
+    }
+
+    @Test
+    public void testNoSubstitutorCalled() {
+
+        interpolator.placeholders("#{a} #b");
+
+        assertTrue(substituted.get("enclosed").isEmpty());
+        assertTrue(substituted.get("prefixed").isEmpty());
+    }
+
+    @Test
+    public void testEscapesAndOverlapsResolvedAsInterpolate() {
+
+        String[] templates = {"^#{a} #b", "^^#{a}", "^^^#{a}#b", "#{a}#b^#c", "^#a#{b}", "#{a #b}"};
+        for (String template : templates) {
+
+            for (Set<String> keys : substituted.values()) keys.clear();
+            interpolator.interpolate(template, "");
+            Map<SubstitutionHandler<String>, Set<String>> placeholders = 
+                    interpolator.placeholders(template);
+
+            assertEquals(template, substituted.get("enclosed"), valueOrEmpty(placeholders.get(enclosed)));
+            assertEquals(template, substituted.get("prefixed"), valueOrEmpty(placeholders.get(prefixed)));
+        }
+    }
+
+    @Test
+    public void testFallbackPlaceholdersIncluded() {
+
+        PrefixHandler<String> at = interpolator.when().prefixedBy("@");
+        at.handleWith(recording("at"));
+        interpolator.fallbackWith(":-");
+        Map<SubstitutionHandler<String>, Set<String>> placeholders = 
+                interpolator.placeholders("#{name:-@user}");
+
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("name")), placeholders.get(enclosed));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("user")), placeholders.get(at));
+    }
+
+    @Test
+    public void testCompiledTemplate() {
+
+        interpolator.cacheTemplates(10, 1000);
+        interpolator.interpolate("#{a}", "");
+        Map<SubstitutionHandler<String>, Set<String>> placeholders = interpolator.placeholders("#{a}");
+
+        assertEquals(interpolator.compile("#{a}").placeholders(), placeholders);
+        assertEquals(1, interpolator.templateCacheStats().hits());
+    }
+
+    private static Set<String> valueOrEmpty(Set<String> keys) {
+
+        return keys != null ? keys : new LinkedHashSet<String>();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.DoubleSubstitutor;
+import org.bigtesting.interpolatd.IntSubstitutor;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.LongSubstitutor;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestPrimitiveSubstitutors {
+
+    private static final int RENDERS = 10000;
+
+    private Interpolator<Account> interpolator;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<Account>();
+        interpolator.when().enclosedBy("#{").and("}").handleWithInt(new IntSubstitutor<Account>() {
+            public int substitute(String captured, Account arg) {
+                return arg.count;
+            }
+        });
+        interpolator.when().enclosedBy("${").and("}").handleWithLong(new LongSubstitutor<Account>() {
+            public long substitute(String captured, Account arg) {
+                return arg.id;
+            }
+        });
+        interpolator.when().enclosedBy("%{").and("}").handleWithDouble(new DoubleSubstitutor<Account>() {
+            public double substitute(String captured, Account arg) {
+                return arg.amount;
+            }
+        });
+        interpolator.escapeWith("^");
+    }
+
+    @Test
+    public void testPrimitiveValues() {
+
+        assertEquals("Account 9007199254740993 has 42 entries totalling 1234.5", 
+                interpolator.interpolate("Account ${id} has #{count} entries totalling %{amount}", 
+                        new Account(42, 9007199254740993L, 1234.5)));
+    }
+
+    @Test
+    public void testExtremeValues() {
+
+        assertEquals("-2147483648 -9223372036854775808 NaN", 
+                interpolator.interpolate("#{count} ${id} %{amount}", 
+                        new Account(Integer.MIN_VALUE, Long.MIN_VALUE, Double.NaN)));
+    }
+
+    @Test
+    public void testEscaped() {
+
+        assertEquals("#{count} 1", interpolator.interpolate("^#{count} #{count}", new Account(1, 2, 3)));
+    }
+
+    @Test
+    public void testWrittenToWriter() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        interpolator.interpolate("#{count}/${id}/%{amount}", new Account(1, 2, 0.25), writer);
+
+        assertEquals("1/2/0.25", writer.toString());
+    }
+
+    @Test
+    public void testPrimitiveRenderingDoesNotAllocate() {
+
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        CompiledTemplate<Account> template = interpolator.compile("Account ${id} has #{count} entries, %{amount}");
+        Account account = new Account(123456, 9876543210L, 17.25);
+        StringBuilder out = new StringBuilder(256);
+
+        render(template, account, out);
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        render(template, account, out);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertEquals("Account 9876543210 has 123456 entries, 17.25", out.toString());
+        assertTrue("allocated " + allocated + " bytes", allocated < RENDERS);
+    }
+
+    @Test
+    public void testBoxingSubstitutorAllocates() {
+
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        Interpolator<Account> boxing = new Interpolator<Account>();
+        boxing.when().enclosedBy("#{").and("}").handleWith(new Substitutor<Account>() {
+            public String substitute(String captured, Account arg) {
+                return Integer.toString(arg.count);
+            }
+        });
+        CompiledTemplate<Account> template = boxing.compile("#{count} entries");
+        StringBuilder out = new StringBuilder(256);
+
+        render(template, new Account(123456, 0, 0), out);
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        render(template, new Account(123456, 0, 0), out);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated >= RENDERS * 16L);
+    }
+
+    private void render(CompiledTemplate<Account> template, Account account, StringBuilder out) {
+
+        for (int i = 0; i < RENDERS; i++) {
+            out.setLength(0);
+            template.interpolate(account, out);
+        }
+    }
+
+    private com.sun.management.ThreadMXBean threadMXBean() {
+
+        Object threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+        Assume.assumeTrue(sunThreads.isThreadAllocatedMemorySupported());
+        sunThreads.setThreadAllocatedMemoryEnabled(true);
+        return sunThreads;
+    }
+
+    private static class Account {
+
+        private final int count;
+        private final long id;
+        private final double amount;
+
+        Account(int count, long id, double amount) {
+            this.count = count;
+            this.id = id;
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestRecursiveExpansion {
+
+    private Interpolator<Map<String, String>> interpolator;
+
+    private Map<String, String> config;
+
+    private AtomicInteger calls;
+
+    @Before
+    public void beforeEachTest() {
+
+        calls = new AtomicInteger();
+        interpolator = new Interpolator<Map<String, String>>();
+        interpolator.when().enclosedBy("${").and("}").handleWith(new Substitutor<Map<String, String>>() {
+            public String substitute(String captured, Map<String, String> config) {
+                calls.incrementAndGet();
+                return config.get(captured);
+            }
+        });
+        interpolator.escapeWith("^");
+        interpolator.expandRecursively(10);
+
+        config = new HashMap<String, String>();
+        config.put("host", "example.com");
+        config.put("port", "8080");
+        config.put("base", "http://${host}:${port}");
+        config.put("api", "${base}/api");
+        config.put("users", "${api}/users");
+    }
+
+    @Test
+    public void testValuesExpanded() {
+
+        assertEquals("GET http://example.com:8080/api/users", interpolator.interpolate("GET ${users}", config));
+    }
+
+    @Test
+    public void testPlainValuesNotExpanded() {
+
+        assertEquals("example.com", interpolator.interpolate("${host}", config));
+    }
+
+    @Test
+    public void testNotExpandedByDefault() {
+
+        Interpolator<Map<String, String>> plain = new Interpolator<Map<String, String>>();
+        plain.when().enclosedBy("${").and("}").handleWith(new Substitutor<Map<String, String>>() {
+            public String substitute(String captured, Map<String, String> config) {
+                return config.get(captured);
+            }
+        });
+
+        assertEquals("${base}/api", plain.interpolate("${api}", config));
+    }
+
+    @Test
+    public void testEachPlaceholderExpandedOnce() {
+
+        assertEquals("http://example.com:8080/api http://example.com:8080/api/users http://example.com:8080", 
+                interpolator.interpolate("${api} ${users} ${base}", config));
+        assertEquals(5, calls.get());
+    }
+
+    @Test
+    public void testMissingValueInExpansionLeft() {
+
+        config.put("link", "${base}/${missing}");
+
+        assertEquals("http://example.com:8080/${missing}", interpolator.interpolate("${link}", config));
+    }
+
+    @Test
+    public void testEscapedPlaceholderInValueNotExpanded() {
+
+        config.put("literal", "^${host}");
+
+        assertEquals("${host}", interpolator.interpolate("${literal}", config));
+    }
+
+    @Test
+    public void testCycleDetected() {
+
+        config.put("a", "[${b}]");
+        config.put("b", "[${c}]");
+        config.put("c", "[${a}]");
+        try {
+            interpolator.interpolate("${a}", config);
+            fail("expected the cycle to be detected");
+        } catch (IllegalStateException e) {
+            assertEquals("cycle in expansion: a -> b -> c -> a", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSelfReferenceDetected() {
+
+        config.put("self", "${self}!");
+        try {
+            interpolator.interpolate("${self}", config);
+            fail("expected the cycle to be detected");
+        } catch (IllegalStateException e) {
+            assertEquals("cycle in expansion: self -> self", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDepthLimit() {
+
+        interpolator.expandRecursively(2);
+        try {
+            interpolator.interpolate("${users}", config);
+            fail("expected the depth limit to be enforced");
+        } catch (IllegalStateException e) {
+            assertEquals("expansion deeper than 2: users -> api -> base", e.getMessage());
+        }
+        assertEquals("http://example.com:8080/api", interpolator.interpolate("${api}", config));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxDepthMustBePositive() {
+
+        interpolator.expandRecursively(0);
+    }
+}
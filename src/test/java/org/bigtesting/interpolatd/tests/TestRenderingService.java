@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.RenderingService;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestRenderingService {
+
+    private Interpolator<String> interpolator;
+
+    private ExecutorService pool;
+
+    private AtomicInteger running;
+
+    private AtomicInteger maxRunning;
+
+    private volatile CountDownLatch blocking;
+
+    private volatile CountDownLatch started;
+
+    private volatile CyclicBarrier barrier;
+
+    @Before
+    public void beforeEachTest() {
+
+        running = new AtomicInteger();
+        maxRunning = new AtomicInteger();
+        blocking = new CountDownLatch(0);
+        pool = Executors.newCachedThreadPool();
+
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+
+                int now = running.incrementAndGet();
+                if (started != null) started.countDown();
+                while (true) {
+                    int max = maxRunning.get();
+                    if (now <= max || maxRunning.compareAndSet(max, now)) break;
+                }
+                try {
+                    blocking.await();
+                    if (barrier != null) barrier.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+                if (captured.equals("missing")) return null;
+                if (captured.equals("broken")) throw new IllegalArgumentException("broken");
+                return captured + "-" + arg;
+            }
+        });
+        interpolator.escapeWith("^");
+    }
+
+    @After
+    public void afterEachTest() {
+
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+
+        RenderingService<String> service = new RenderingService<String>(interpolator, pool, 4);
+
+        Future<String> result = service.submit("Hello #{name}!", "a");
+        assertEquals("Hello name-a!", result.get());
+    }
+
+    @Test
+    public void testEscapedPlaceholdersNotSubstituted() throws Exception {
+
+        RenderingService<String> service = new RenderingService<String>(interpolator, pool, 4);
+
+        assertEquals("#{broken} a-x", service.interpolate("^#{broken} #{a}", "x"));
+        for (String template : new String[] {"^^#{a}", "^^^#{a}#{b}", "^^^^#{a}", "x^#{a}^"}) {
+            assertEquals(template, interpolator.interpolate(template, "x"), 
+                    service.interpolate(template, "x"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrencyLimitHonored() throws Exception {
+
+        final RenderingService<String> service = new RenderingService<String>(interpolator, pool, 3);
+        blocking = new CountDownLatch(1);
+        started = new CountDownLatch(3);
+
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        final AtomicInteger submitted = new AtomicInteger();
+        Thread submitter = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 20; i++) {
+                        results.add(service.submit("#{name}", "a" + i));
+                        submitted.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        submitter.start();
+        started.await();
+
+        /* the three running tasks are blocked, so no more can be submitted */
+        assertEquals(3, running.get());
+        assertTrue(submitted.get() <= 3);
+
+        blocking.countDown();
+        submitter.join();
+        assertEquals(20, submitted.get());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("name-a" + i, results.get(i).get());
+        }
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test(timeout = 10000)
+    public void testPlaceholdersSubstitutedConcurrently() throws Exception {
+
+        RenderingService<String> service = new RenderingService<String>(interpolator, pool, 3);
+        barrier = new CyclicBarrier(3);
+
+        assertEquals("x-a, y-a and z-a", service.interpolate("#{x}, #{y} and #{z}", "a"));
+        assertEquals(3, maxRunning.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testPlaceholdersLimitedToMaxConcurrency() throws Exception {
+
+        RenderingService<String> service = new RenderingService<String>(interpolator, pool, 2);
+
+        assertEquals("a-1 b-1 c-1 d-1 e-1", service.interpolate("#{a} #{b} #{c} #{d} #{e}", "1"));
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testPlaceholderResultSameAsSequential() throws Exception {
+
+        RenderingService<String> service = new RenderingService<String>(interpolator, pool, 4);
+        String template = "^#{a} #{missing} ^^#{b} #{c}#{d} ^";
+
+        assertEquals(interpolator.interpolate(template, "1"), service.interpolate(template, "1"));
+    }
+
+    @Test
+    public void testPlaceholderFailurePropagates() throws Exception {
+
+        RenderingService<String> service = new RenderingService<String>(interpolator, pool, 4);
+        try {
+            service.interpolate("#{a} #{broken}", "1");
+            fail("expected the failure to propagate");
+        } catch (IllegalArgumentException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPermitReleasedWhenRejected() throws Exception {
+
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        Executor rejecting = new Executor() {
+            public void execute(Runnable command) {
+                if (reject.get()) throw new RejectedExecutionException();
+                command.run();
+            }
+        };
+        RenderingService<String> service = new RenderingService<String>(interpolator, rejecting, 1);
+
+        try {
+            service.submit("#{name}", "a");
+            fail("expected the task to be rejected");
+        } catch (RejectedExecutionException e) {}
+
+        reject.set(false);
+        assertEquals("name-a", service.submit("#{name}", "a").get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxConcurrencyMustBePositive() {
+
+        new RenderingService<String>(interpolator, pool, 0);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bigtesting.interpolatd.CacheStats;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.KeyExtractor;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestResultCache {
+
+    private Interpolator<Bundle> interpolator;
+
+    private AtomicInteger substitutions;
+
+    private KeyExtractor<Bundle> byLocale;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<Bundle>();
+        substitutions = new AtomicInteger();
+
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<Bundle>() {
+            public String substitute(String captured, Bundle bundle) {
+                substitutions.incrementAndGet();
+                return bundle.values.get(captured);
+            }
+        });
+
+        byLocale = new KeyExtractor<Bundle>() {
+            public Object keyFor(Bundle bundle) {
+                return bundle.locale;
+            }
+        };
+    }
+
+    @Test
+    public void testRepeatedInterpolationDoesNotCallSubstitutor() {
+
+        interpolator.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals(1, substitutions.get());
+
+        CacheStats stats = interpolator.resultCacheStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    @Test
+    public void testResultsCachedPerArgKey() {
+
+        interpolator.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+        Bundle fr = new Bundle("fr").with("greeting", "Bonjour");
+
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals("Bonjour World", interpolator.interpolate("#{greeting} World", fr));
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals(2, substitutions.get());
+    }
+
+    @Test
+    public void testNullArgKeyIsNotCached() {
+
+        interpolator.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        Bundle none = new Bundle(null).with("greeting", "Hello");
+
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", none));
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", none));
+        assertEquals(2, substitutions.get());
+        assertEquals(0, interpolator.resultCacheStats().size());
+    }
+
+    @Test
+    public void testInvalidateAllResults() {
+
+        interpolator.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        en.with("greeting", "Hi");
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+
+        interpolator.invalidateResults();
+        assertEquals("Hi World", interpolator.interpolate("#{greeting} World", en));
+    }
+
+    @Test
+    public void testInvalidateResultsForArgKey() {
+
+        interpolator.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+        Bundle fr = new Bundle("fr").with("greeting", "Bonjour");
+
+        interpolator.interpolate("#{greeting} World", en);
+        interpolator.interpolate("#{greeting}!", en);
+        interpolator.interpolate("#{greeting} World", fr);
+
+        en.with("greeting", "Hi");
+        fr.with("greeting", "Salut");
+        interpolator.invalidateResults("en");
+
+        assertEquals("Hi World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals("Hi!", interpolator.interpolate("#{greeting}!", en));
+        assertEquals("Bonjour World", interpolator.interpolate("#{greeting} World", fr));
+    }
+
+    @Test
+    public void testInvalidateSingleResult() {
+
+        interpolator.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+
+        interpolator.interpolate("#{greeting} World", en);
+        interpolator.interpolate("#{greeting}!", en);
+
+        en.with("greeting", "Hi");
+        interpolator.invalidateResult("#{greeting}!", "en");
+
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals("Hi!", interpolator.interpolate("#{greeting}!", en));
+    }
+
+    @Test
+    public void testResultsEvictedBySize() {
+
+        interpolator.cacheResults(byLocale, 2, 0, TimeUnit.SECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+
+        interpolator.interpolate("#{greeting} 1", en);
+        interpolator.interpolate("#{greeting} 2", en);
+        interpolator.interpolate("#{greeting} 3", en);
+
+        CacheStats stats = interpolator.resultCacheStats();
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.size());
+    }
+
+    @Test
+    public void testResultsExpire() throws Exception {
+
+        interpolator.cacheResults(byLocale, 100, 20, TimeUnit.MILLISECONDS);
+        Bundle en = new Bundle("en").with("greeting", "Hello");
+
+        assertEquals("Hello World", interpolator.interpolate("#{greeting} World", en));
+        en.with("greeting", "Hi");
+        Thread.sleep(50);
+        assertEquals("Hi World", interpolator.interpolate("#{greeting} World", en));
+        assertEquals(1, interpolator.resultCacheStats().evictions());
+    }
+
+    @Test
+    public void testInvalidationWithoutCacheIsHarmless() {
+
+        interpolator.invalidateResults();
+        interpolator.invalidateResults("en");
+        interpolator.invalidateResult("#{greeting}", "en");
+        assertEquals(0, interpolator.resultCacheStats().size());
+    }
+
+    @Test(timeout = 10000)
+    public void testRenderRacingInvalidationNotCached() throws Exception {
+
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch invalidated = new CountDownLatch(1);
+        final AtomicReference<String> value = new AtomicReference<String>("old");
+        final Interpolator<Bundle> racing = new Interpolator<Bundle>();
+        racing.when().enclosedBy("#{").and("}").handleWith(new Substitutor<Bundle>() {
+            public String substitute(String captured, Bundle bundle) {
+                String v = value.get();
+                rendering.countDown();
+                try {
+                    invalidated.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return v;
+            }
+        });
+        racing.cacheResults(byLocale, 100, 0, TimeUnit.SECONDS);
+        final Bundle en = new Bundle("en");
+
+        Thread render = new Thread() {
+            public void run() {
+                racing.interpolate("v=#{v}", en);
+            }
+        };
+        render.start();
+        rendering.await();
+        value.set("new");
+        racing.invalidateResults();
+        invalidated.countDown();
+        render.join();
+
+        assertEquals("v=new", racing.interpolate("v=#{v}", en));
+        assertEquals("v=new", racing.interpolate("v=#{v}", en));
+    }
+
+    /*-----------------------------------*/
+
+    private static class Bundle {
+
+        private final String locale;
+        private final Map<String, String> values = new HashMap<String, String>();
+
+        Bundle(String locale) {
+            this.locale = locale;
+        }
+
+        Bundle with(String key, String value) {
+            values.put(key, value);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Rope;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.WritingSubstitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestRope {
+
+    private Interpolator<String> interpolator;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.equals("missing") ? null : arg;
+            }
+        });
+        interpolator.when().enclosedBy("<<").and(">>").handleWith(new WritingSubstitutor<String>() {
+            public boolean write(String captured, String arg, Appendable out) throws IOException {
+                StringBuilder sb = new StringBuilder(captured).append('!');
+                out.append(sb).append('?');
+                sb.setLength(0);
+                return true;
+            }
+        });
+        interpolator.escapeWith("^");
+    }
+
+    @Test
+    public void testSameAsInterpolate() {
+
+        String template = "Hello #{name}, ^#{escaped} #{missing} <<shout>> done";
+
+        assertEquals(interpolator.interpolate(template, "tom"), interpolator.rope(template, "tom").toString());
+    }
+
+    @Test
+    public void testCharSequence() {
+
+        Rope rope = interpolator.rope("ab#{x}cd#{x}", "XY");
+
+        assertEquals(8, rope.length());
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < rope.length(); i++) {
+            chars.append(rope.charAt(i));
+        }
+        assertEquals("abXYcdXY", chars.toString());
+        assertEquals("XYcd", rope.subSequence(2, 6).toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testCharAtOutOfBounds() {
+
+        interpolator.rope("ab#{x}", "c").charAt(3);
+    }
+
+    @Test
+    public void testEmpty() {
+
+        Rope rope = interpolator.rope("", "x");
+
+        assertEquals(0, rope.length());
+        assertEquals("", rope.toString());
+    }
+
+    @Test
+    public void testWriteToWriter() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        interpolator.rope("[#{a}] <<b>> [#{missing}]", "A").writeTo(writer);
+
+        assertEquals("[A] b!? [#{missing}]", writer.toString());
+    }
+
+    @Test
+    public void testWriteToChannel() throws Exception {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpolator.rope("caf\u00e9 #{x} \u20ac", "na\u00efve").writeTo(Channels.newChannel(bytes));
+
+        assertEquals("caf\u00e9 na\u00efve \u20ac", new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testSurrogatePairSplitAcrossSlices() throws Exception {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpolator.rope("smile: \ud83d#{x}", "\ude00").writeTo(Channels.newChannel(bytes));
+
+        assertEquals("smile: \ud83d\ude00", new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testWriteLargeRopeToChannelInCharset() throws Exception {
+
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            template.append("line \u00e9 #{x}\n");
+        }
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Rope rope = interpolator.rope(template.toString(), "v");
+        rope.writeTo(Channels.newChannel(bytes), latin1);
+
+        assertEquals(rope.toString(), new String(bytes.toByteArray(), latin1));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.ScopeChain;
+import org.bigtesting.interpolatd.ScopedSubstitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestScopeChain {
+
+    private Interpolator<ScopeChain> interpolator;
+
+    private CountingMap global;
+
+    private Map<String, Object> session;
+
+    private Map<String, Object> request;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<ScopeChain>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new ScopedSubstitutor());
+
+        global = new CountingMap();
+        global.put("site", "example.com");
+        global.put("greeting", "Hello");
+        global.put("user", "nobody");
+
+        session = new HashMap<String, Object>();
+        session.put("user", "tom");
+
+        request = new HashMap<String, Object>();
+        request.put("page", 3);
+    }
+
+    @Test
+    public void testFirstLayerWins() {
+
+        assertEquals("Hello tom, page 3 of example.com", interpolator.interpolate(
+                "#{greeting} #{user}, page #{page} of #{site}", ScopeChain.of(request, session, global)));
+    }
+
+    @Test
+    public void testNullValueFallsThrough() {
+
+        session.put("greeting", null);
+
+        assertEquals("Hello", interpolator.interpolate("#{greeting}", ScopeChain.of(session, global)));
+    }
+
+    @Test
+    public void testMissingNameLeft() {
+
+        assertEquals("#{missing}", interpolator.interpolate("#{missing}", ScopeChain.of(session, global)));
+    }
+
+    @Test
+    public void testLayersNotCopied() {
+
+        ScopeChain scopes = ScopeChain.of(session, global);
+        session.put("user", "ann");
+
+        assertEquals("ann", interpolator.interpolate("#{user}", scopes));
+    }
+
+    @Test
+    public void testLookupsNotMemoizedByDefault() {
+
+        interpolator.interpolate("#{site} #{site} #{site}", ScopeChain.of(request, session, global));
+
+        assertEquals(3, global.gets);
+    }
+
+    @Test
+    public void testMemoizedLookups() {
+
+        ScopeChain scopes = ScopeChain.memoizing(request, session, global);
+
+        assertEquals("example.com example.com #{missing} #{missing}", 
+                interpolator.interpolate("#{site} #{site} #{missing} #{missing}", scopes));
+        assertEquals(2, global.gets);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullLayer() {
+
+        ScopeChain.of(session, null);
+    }
+
+    private static class CountingMap extends HashMap<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int gets;
+
+        @Override
+        public Object get(Object key) {
+            gets++;
+            return super.get(key);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.SectionProvider;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestSections {
+
+    private Interpolator<Map<String, Object>> interpolator;
+
+    private Map<String, Object> order;
+
+    private List<String> provided;
+
+    @Before
+    public void beforeEachTest() {
+
+        provided = new ArrayList<String>();
+        interpolator = new Interpolator<Map<String, Object>>();
+        interpolator.sectionsWith("{{#", "{{/", "}}", new SectionProvider<Map<String, Object>>() {
+            @SuppressWarnings("unchecked")
+            public Iterable<Map<String, Object>> rows(String name, Map<String, Object> arg) {
+                provided.add(name);
+                return (Iterable<Map<String, Object>>)arg.get(name);
+            }
+        });
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<Map<String, Object>>() {
+            public String substitute(String captured, Map<String, Object> arg) {
+                Object value = arg.get(captured);
+                return value != null ? value.toString() : null;
+            }
+        });
+        interpolator.escapeWith("^");
+
+        order = map("id", 7);
+        order.put("lines", Arrays.asList(
+                line("apple", 3, Arrays.asList(map("note", "ripe"))), 
+                line("pear", 1, Collections.<Map<String, Object>>emptyList())));
+    }
+
+    @Test
+    public void testSectionRepeatedForEachRow() {
+
+        assertEquals("Order 7: [apple x3][pear x1] end", interpolator.interpolate(
+                "Order #{id}: {{#lines}}[#{item} x#{qty}]{{/lines}} end", order));
+        assertEquals(Arrays.asList("lines"), provided);
+    }
+
+    @Test
+    public void testSectionBodySpansLines() {
+
+        assertEquals("<ul>\n  <li>apple</li>\n  <li>pear</li>\n</ul>", interpolator.interpolate(
+                "<ul>{{#lines}}\n  <li>#{item}</li>{{/lines}}\n</ul>", order));
+    }
+
+    @Test
+    public void testEmptySection() {
+
+        order.put("lines", Collections.emptyList());
+
+        assertEquals("Order 7: ", interpolator.interpolate("Order #{id}: {{#lines}}[#{item}]{{/lines}}", order));
+    }
+
+    @Test
+    public void testSectionWithoutRowsLeft() {
+
+        assertEquals("{{#missing}}x{{/missing}}", interpolator.interpolate("{{#missing}}x{{/missing}}", order));
+    }
+
+    @Test
+    public void testNestedSections() {
+
+        assertEquals("apple(ripe) pear() ", interpolator.interpolate(
+                "{{#lines}}#{item}({{#notes}}#{note}{{/notes}}) {{/lines}}", order));
+    }
+
+    @Test
+    public void testSeveralSections() {
+
+        assertEquals("apple,pear,|apple;pear;", interpolator.interpolate(
+                "{{#lines}}#{item},{{/lines}}|{{#lines}}#{item};{{/lines}}", order));
+    }
+
+    @Test
+    public void testEscapedSection() {
+
+        assertEquals("{{#lines}}#{item}{{/lines}}", interpolator.interpolate("^{{#lines}}#{item}{{/lines}}", order));
+    }
+
+    @Test(timeout = 10000)
+    public void testManyUnclosedSections() {
+
+        StringBuilder unclosed = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            unclosed.append("{{#a}}x{{#b").append(i).append("}} ");
+        }
+        String template = unclosed + "{{#lines}}#{item}{{/lines}}";
+
+        assertEquals(unclosed + "applepear", interpolator.interpolate(template, order));
+    }
+
+    @Test
+    public void testCompiledSectionRenderedRepeatedly() {
+
+        CompiledTemplate<Map<String, Object>> compiled = 
+            interpolator.compile("Order #{id}: {{#lines}}[#{item}]{{/lines}}");
+        assertEquals("Order 7: [apple][pear]", compiled.interpolate(order));
+
+        order.put("id", 8);
+        order.put("lines", Arrays.asList(line("fig", 2, null)));
+        assertEquals("Order 8: [fig]", compiled.interpolate(order));
+        assertEquals(Arrays.asList("lines", "lines"), provided);
+    }
+
+    @Test
+    public void testSectionWrittenToWriter() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        interpolator.interpolate("{{#lines}}<#{item}>{{/lines}}", order, writer);
+
+        assertEquals("<apple><pear>", writer.toString());
+    }
+
+    private static Map<String, Object> line(String item, int qty, List<Map<String, Object>> notes) {
+
+        Map<String, Object> line = map("item", item);
+        line.put("qty", qty);
+        line.put("notes", notes);
+        return line;
+    }
+
+    private static Map<String, Object> map(String key, Object value) {
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(key, value);
+        return map;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.PatternSyntaxException;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.core.SharedPattern;
+import org.bigtesting.interpolatd.core.SharedPatterns;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestSharedPatterns {
+
+    @Test
+    public void testIdenticalRegexesShareOnePattern() {
+
+        SharedPattern first = SharedPatterns.intern("(\\Q#{\\E[a-z]+\\Q}\\E)");
+        SharedPattern second = SharedPatterns.intern("(\\Q#{\\E[a-z]+\\Q}\\E)");
+
+        assertSame(first, second);
+        assertSame(first.get(), second.get());
+    }
+
+    @Test
+    public void testDifferentRegexesDoNotSharePatterns() {
+
+        SharedPattern first = SharedPatterns.intern("(\\Q#{\\E[a-z]+\\Q}\\E)");
+        SharedPattern second = SharedPatterns.intern("(\\Q#{\\E[0-9]+\\Q}\\E)");
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testPatternCompiledOnFirstUse() {
+
+        SharedPattern invalid = SharedPatterns.intern("([unclosed)");
+        try {
+            invalid.get();
+            fail("expected the pattern to be compiled, and fail, on first use");
+        } catch (PatternSyntaxException e) {
+            assertEquals("([unclosed)", e.getPattern());
+        }
+    }
+
+    @Test
+    public void testIdenticallyConfiguredInterpolatorsInterpolateIndependently() {
+
+        Interpolator<String> first = newInterpolator("Hello");
+        Interpolator<String> second = newInterpolator("Bye");
+
+        assertEquals("Hello John ^:x", first.interpolate(":name ^^:x", "John"));
+        assertEquals("Bye John ^:x", second.interpolate(":name ^^:x", "John"));
+    }
+
+    private Interpolator<String> newInterpolator(final String greeting) {
+
+        Interpolator<String> interpolator = new Interpolator<String>();
+        interpolator.when("[a-z]+").prefixedBy(":").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.equals("name") ? greeting + " " + arg : null;
+            }
+        });
+        interpolator.escapeWith("^");
+        return interpolator;
+    }
+}
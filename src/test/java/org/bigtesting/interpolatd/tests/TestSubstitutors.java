@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.KeyExtractor;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.Substitutors;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestSubstitutors {
+
+    private AtomicInteger calls;
+
+    private volatile String suffix;
+
+    private Substitutor<String> lookup;
+
+    private KeyExtractor<String> identity;
+
+    private Executor sameThread;
+
+    @Before
+    public void beforeEachTest() {
+
+        calls = new AtomicInteger();
+        suffix = "";
+
+        lookup = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                calls.incrementAndGet();
+                if (captured.equals("missing")) return null;
+                if (captured.equals("broken")) throw new IllegalStateException("broken");
+                return captured + "-" + arg + suffix;
+            }
+        };
+
+        identity = new KeyExtractor<String>() {
+            public Object keyFor(String arg) {
+                return arg;
+            }
+        };
+
+        sameThread = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+    }
+
+    @Test
+    public void testCachingSubstitutorReturnsCachedValue() {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 100, 0, TimeUnit.SECONDS, identity);
+
+        assertEquals("name-a", caching.substitute("name", "a"));
+        assertEquals("name-a", caching.substitute("name", "a"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCachingSubstitutorKeyedByCapturedAndArgKey() {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 100, 0, TimeUnit.SECONDS, identity);
+
+        assertEquals("name-a", caching.substitute("name", "a"));
+        assertEquals("name-b", caching.substitute("name", "b"));
+        assertEquals("id-a", caching.substitute("id", "a"));
+        assertEquals("name-a", caching.substitute("name", "a"));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testCachingSubstitutorCachesNull() {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 100, 0, TimeUnit.SECONDS, identity);
+
+        assertNull(caching.substitute("missing", "a"));
+        assertNull(caching.substitute("missing", "a"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCachingSubstitutorBypassedForNullArgKey() {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 100, 0, TimeUnit.SECONDS,
+                new KeyExtractor<String>() {
+                    public Object keyFor(String arg) {
+                        return null;
+                    }
+                });
+
+        caching.substitute("name", "a");
+        caching.substitute("name", "a");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCachingSubstitutorDoesNotCacheFailures() {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 100, 0, TimeUnit.SECONDS, identity);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                caching.substitute("broken", "a");
+                fail("expected the failure to propagate");
+            } catch (IllegalStateException e) {
+                assertEquals("broken", e.getMessage());
+            }
+        }
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCachingSubstitutorEvictsLeastRecentlyUsed() {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 1, 0, TimeUnit.SECONDS, identity);
+
+        caching.substitute("name", "a");
+        caching.substitute("id", "a");
+        caching.substitute("name", "a");
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testStaleValueServedWhileRefreshed() throws Exception {
+
+        Substitutor<String> caching = Substitutors.caching(lookup, 100, 10, TimeUnit.MILLISECONDS,
+                identity, sameThread);
+
+        assertEquals("name-a", caching.substitute("name", "a"));
+        suffix = "!";
+        Thread.sleep(30);
+
+        assertEquals("name-a", caching.substitute("name", "a"));
+        assertEquals(2, calls.get());
+        assertEquals("name-a!", caching.substitute("name", "a"));
+    }
+
+    @Test(timeout = 10000)
+    public void testHotKeyLoadedOnce() throws Exception {
+
+        final CountDownLatch loading = new CountDownLatch(1);
+        Substitutor<String> slow = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                calls.incrementAndGet();
+                try {
+                    loading.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return captured + "-" + arg;
+            }
+        };
+        final Substitutor<String> caching = Substitutors.caching(slow, 100, 0, TimeUnit.SECONDS, identity);
+
+        int threads = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() {
+                        return caching.substitute("hot", "a");
+                    }
+                }));
+            }
+            Thread.sleep(50);
+            loading.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("hot-a", result.get());
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCachingSubstitutorUsedByInterpolator() {
+
+        Interpolator<String> interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}")
+            .handleWith(Substitutors.caching(lookup, 100, 0, TimeUnit.SECONDS, identity));
+
+        assertEquals("name-a name-a", interpolator.interpolate("#{name} #{name}", "a"));
+        assertEquals("name-a", interpolator.interpolate("#{name}", "a"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxSizeMustBePositive() {
+
+        Substitutors.caching(lookup, 0, 0, TimeUnit.SECONDS, identity);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.CacheStats;
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestTemplateCache {
+
+    private Interpolator<Map<String, String>> interpolator;
+
+    private Map<String, String> map;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<Map<String, String>>();
+
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new Substitutor<Map<String, String>>() {
+            public String substitute(String captured, Map<String, String> map) {
+                return map.get(captured);
+            }
+        });
+
+        interpolator.escapeWith("^");
+
+        map = new HashMap<String, String>();
+        map.put("name", "John");
+        map.put("greeting", "Hello");
+    }
+
+    @Test
+    public void testCompiledTemplateInterpolatedLikeTemplateString() {
+
+        CompiledTemplate<Map<String, String>> compiled =
+                interpolator.compile("#{greeting} #{name}, ^#{name} #{unknown}");
+
+        assertEquals("Hello John, #{name} #{unknown}", compiled.interpolate(map));
+
+        map.put("name", "Jane");
+        assertEquals("Hello Jane, #{name} #{unknown}", compiled.interpolate(map));
+    }
+
+    @Test
+    public void testNoStatsWhenCacheNotConfigured() {
+
+        assertEquals("Hello John", interpolator.interpolate("#{greeting} #{name}", map));
+
+        CacheStats stats = interpolator.templateCacheStats();
+        assertEquals(0, stats.hits());
+        assertEquals(0, stats.misses());
+    }
+
+    @Test
+    public void testRepeatedTemplateIsAHit() {
+
+        interpolator.cacheTemplates(10, 1000);
+
+        assertEquals("Hello John", interpolator.interpolate("#{greeting} #{name}", map));
+        map.put("name", "Jane");
+        assertEquals("Hello Jane", interpolator.interpolate("#{greeting} #{name}", map));
+
+        CacheStats stats = interpolator.templateCacheStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0, stats.evictions());
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTemplateEvictedByCount() {
+
+        interpolator.cacheTemplates(2, 1000);
+
+        interpolator.interpolate("a #{name}", map);
+        interpolator.interpolate("b #{name}", map);
+        interpolator.interpolate("a #{name}", map);
+        interpolator.interpolate("c #{name}", map);
+
+        CacheStats stats = interpolator.templateCacheStats();
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.size());
+
+        /* "a" was used more recently than "b", so "b" was evicted */
+        interpolator.interpolate("a #{name}", map);
+        assertEquals(2, interpolator.templateCacheStats().hits());
+        interpolator.interpolate("b #{name}", map);
+        assertEquals(2, interpolator.templateCacheStats().hits());
+    }
+
+    @Test
+    public void testNewTemplateCachedWhenAllTemplatesWereUsed() {
+
+        interpolator.cacheTemplates(2, 1000);
+
+        interpolator.interpolate("a #{name}", map);
+        interpolator.interpolate("b #{name}", map);
+        interpolator.interpolate("a #{name}", map);
+        interpolator.interpolate("b #{name}", map);
+        interpolator.interpolate("c #{name}", map);
+        assertEquals(2, interpolator.templateCacheStats().hits());
+
+        /* "c" was kept, and "a", the eldest, was evicted */
+        interpolator.interpolate("c #{name}", map);
+        assertEquals(3, interpolator.templateCacheStats().hits());
+        interpolator.interpolate("b #{name}", map);
+        assertEquals(4, interpolator.templateCacheStats().hits());
+        interpolator.interpolate("a #{name}", map);
+        assertEquals(4, interpolator.templateCacheStats().hits());
+    }
+
+    @Test
+    public void testTemplatesEvictedByTotalChars() {
+
+        interpolator.cacheTemplates(100, 20);
+
+        interpolator.interpolate("1234567890", map);
+        interpolator.interpolate("abcdefghij", map);
+        interpolator.interpolate("ABCDEFGHIJ", map);
+
+        CacheStats stats = interpolator.templateCacheStats();
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.size());
+    }
+
+    @Test
+    public void testTemplateLargerThanMaxCharsIsNotCached() {
+
+        interpolator.cacheTemplates(100, 5);
+
+        assertEquals("Hello John", interpolator.interpolate("#{greeting} #{name}", map));
+        assertEquals("Hello John", interpolator.interpolate("#{greeting} #{name}", map));
+
+        CacheStats stats = interpolator.templateCacheStats();
+        assertEquals(0, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(0, stats.size());
+    }
+
+    @Test
+    public void testCacheClearedWhenInterpolatorReconfigured() {
+
+        interpolator.cacheTemplates(10, 1000);
+
+        assertEquals("Hello :name", interpolator.interpolate("#{greeting} :name", map));
+
+        interpolator.when().prefixedBy(":").handleWith(new Substitutor<Map<String, String>>() {
+            public String substitute(String captured, Map<String, String> map) {
+                return map.get(captured);
+            }
+        });
+
+        assertEquals("Hello John", interpolator.interpolate("#{greeting} :name", map));
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentHitsAndEvictions() throws Exception {
+
+        interpolator.cacheTemplates(8, 1000);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        String template = (i % 4 == 0 ? thread * 1000 + i : i % 4) + " #{name}";
+                        if (!interpolator.interpolate(template, map).endsWith(" John")) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        CacheStats stats = interpolator.templateCacheStats();
+        assertEquals(0, failures.get());
+        assertTrue(stats.size() <= 8);
+        assertTrue(stats.hits() > 0);
+        assertEquals(16000, stats.hits() + stats.misses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxTemplatesMustBePositive() {
+
+        interpolator.cacheTemplates(0, 1000);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.TemplateRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestTemplateRegistry {
+
+    private Map<String, String> values;
+
+    private AtomicInteger calls;
+
+    private Interpolator<String> interpolator;
+
+    private TemplateRegistry<String> registry;
+
+    @Before
+    public void beforeEachTest() {
+
+        values = new ConcurrentHashMap<String, String>();
+        values.put("host", "localhost");
+        values.put("port", "8080");
+        values.put("user", "admin");
+        calls = new AtomicInteger();
+
+        interpolator = new Interpolator<String>();
+        Substitutor<String> lookup = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                calls.incrementAndGet();
+                return values.get(captured);
+            }
+        };
+        interpolator.when().enclosedBy("${").and("}").handleWith(lookup);
+        interpolator.when().prefixedBy("%").handleWith(lookup);
+        interpolator.escapeWith("^");
+        interpolator.fallbackWith(":-");
+        registry = interpolator.registry();
+    }
+
+    @Test
+    public void testRegisterRenders() {
+
+        registry.register("url", "http://${host}:${port}", null);
+
+        assertEquals("http://localhost:8080", registry.result("url"));
+        assertNull(registry.result("other"));
+    }
+
+    @Test
+    public void testOnlyDependentsRefreshed() {
+
+        registry.register("url", "http://${host}:${port}", null);
+        registry.register("login", "user=${user}", null);
+        registry.register("static", "no placeholders", null);
+        calls.set(0);
+
+        values.put("port", "9090");
+        Set<Object> refreshed = registry.refresh(Collections.singleton("port"));
+
+        assertEquals(Collections.<Object>singleton("url"), refreshed);
+        assertEquals(2, calls.get());
+        assertEquals("http://localhost:9090", registry.result("url"));
+        assertEquals("user=admin", registry.result("login"));
+    }
+
+    @Test
+    public void testFallbackKeysTracked() {
+
+        registry.register("greeting", "hi ${name:-%user}", null);
+
+        assertEquals("hi admin", registry.result("greeting"));
+        assertEquals(Collections.<Object>singleton("greeting"), 
+                registry.dependents(Collections.singleton("user")));
+        assertEquals(Collections.<Object>singleton("greeting"), 
+                registry.dependents(Collections.singleton("name")));
+    }
+
+    @Test
+    public void testOverlappedPlaceholderTracked() {
+
+        Interpolator<String> overlapping = new Interpolator<String>();
+        Substitutor<String> lookup = new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return values.get(captured);
+            }
+        };
+        overlapping.when().enclosedBy("#{").and("}").handleWith(lookup);
+        overlapping.when().prefixedBy("#").handleWith(lookup);
+        TemplateRegistry<String> overlapped = overlapping.registry();
+        values.put("{x}", "PREFIX");
+
+        overlapped.register("doc", "v=#{x}", null);
+        assertEquals("v=PREFIX", overlapped.result("doc"));
+
+        values.put("{x}", "CHANGED");
+        assertEquals(Collections.<Object>singleton("doc"), 
+                overlapped.refresh(Collections.singleton("{x}")));
+        assertEquals("v=CHANGED", overlapped.result("doc"));
+    }
+
+    @Test
+    public void testReregisterReplacesKeys() {
+
+        registry.register("doc", "${host}", null);
+        registry.register("doc", "${user}", null);
+
+        assertTrue(registry.dependents(Collections.singleton("host")).isEmpty());
+        assertEquals(Collections.<Object>singleton("doc"), 
+                registry.dependents(Collections.singleton("user")));
+    }
+
+    @Test
+    public void testUnregister() {
+
+        registry.register("doc", "${host}", null);
+        registry.unregister("doc");
+
+        assertNull(registry.result("doc"));
+        assertTrue(registry.refresh(Collections.singleton("host")).isEmpty());
+    }
+
+    @Test
+    public void testParallelRefresh() throws Exception {
+
+        Set<Object> expected = new HashSet<Object>();
+        for (int i = 0; i < 100; i++) {
+            registry.register(i, "${host}/" + i, null);
+            registry.register("user" + i, "${user}/" + i, null);
+            expected.add(i);
+        }
+        values.put("host", "example.org");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(expected, registry.refresh(Arrays.asList("host", "unknown"), executor));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("example.org/42", registry.result(42));
+        assertEquals("admin/42", registry.result("user42"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIdCannotBeNull() {
+
+        registry.register(null, "${host}", null);
+    }
+}
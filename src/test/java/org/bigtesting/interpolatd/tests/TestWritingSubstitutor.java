@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 BigTesting.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bigtesting.interpolatd.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.bigtesting.interpolatd.CompiledTemplate;
+import org.bigtesting.interpolatd.Interpolator;
+import org.bigtesting.interpolatd.Substitutor;
+import org.bigtesting.interpolatd.WritingSubstitutor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Luis Antunes
+ */
+public class TestWritingSubstitutor {
+
+    private Interpolator<String> interpolator;
+
+    private Appendable lastOut;
+
+    @Before
+    public void beforeEachTest() {
+
+        interpolator = new Interpolator<String>();
+        interpolator.when().enclosedBy("#{").and("}").handleWith(new WritingSubstitutor<String>() {
+            public boolean write(String captured, String arg, Appendable out) throws IOException {
+                lastOut = out;
+                if (captured.equals("missing")) return false;
+                if (captured.equals("partial")) {
+                    out.append("partial");
+                    return false;
+                }
+                if (captured.equals("broken")) throw new IOException("broken");
+                for (int i = 0; i < 3; i++) {
+                    out.append(captured).append(arg);
+                }
+                return true;
+            }
+        });
+        interpolator.when().prefixedBy("$").handleWith(new Substitutor<String>() {
+            public String substitute(String captured, String arg) {
+                return captured.toUpperCase();
+            }
+        });
+        interpolator.escapeWith("^");
+    }
+
+    @Test
+    public void testValueWrittenInPlace() {
+
+        assertEquals("Hello xaxaxa!", interpolator.interpolate("Hello #{x}!", "a"));
+    }
+
+    @Test
+    public void testMatchLeftWhenNotWritten() {
+
+        assertEquals("Hello #{missing} xaxaxa", interpolator.interpolate("Hello #{missing} #{x}", "a"));
+    }
+
+    @Test
+    public void testPartialWriteDiscardedWhenNotWritten() {
+
+        assertEquals("#{partial} and #{partial}", 
+                interpolator.interpolate("#{partial} and #{partial}", "a"));
+    }
+
+    @Test
+    public void testMixedWithSubstitutorsAndEscapes() {
+
+        assertEquals("yayaya ^^ #{y} and NAME ^", 
+                interpolator.interpolate("#{y} ^^ ^#{y} and $name ^", "a"));
+    }
+
+    @Test
+    public void testWrittenToWriter() throws Exception {
+
+        StringWriter writer = new StringWriter();
+        interpolator.interpolate("Dear #{x}, $id #{missing}.", "a", writer);
+
+        assertEquals("Dear xaxaxa, ID #{missing}.", writer.toString());
+        assertSame(writer, lastOut);
+    }
+
+    @Test
+    public void testCompiledTemplateWrittenToWriter() throws Exception {
+
+        CompiledTemplate<String> template = interpolator.compile("[#{x}]");
+        Writer writer = new StringWriter();
+        template.interpolate("b", writer);
+        template.interpolate("c", writer);
+
+        assertEquals("[xbxbxb][xcxcxc]", writer.toString());
+    }
+
+    @Test
+    public void testFailureWhenWritingToWriter() {
+
+        try {
+            interpolator.interpolate("#{broken}", "a", new StringWriter());
+            fail("expected the failure to propagate");
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailureWhenInterpolatingToString() {
+
+        try {
+            interpolator.interpolate("#{broken}", "a");
+            fail("expected the failure to propagate");
+        } catch (RuntimeException e) {
+            assertEquals("broken", e.getCause().getMessage());
+        }
+    }
+}